@@ -0,0 +1,45 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A search through {@link JpaCriteriaSearchDtoAdapterService} next to the same search as a {@link Dto.Search},
+ * the difference being the cost of converting the probe object.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdapterBenchmark {
+
+    private final ItemProbe probe = new ItemProbe("item-7-", 7L);
+    private final Dto.Search search = Dto.Search.builder()
+            .where(Dto.Where.builder().like(Map.of("name", "item-7-")).equalsLong(Map.of("bucket", 7L)).build())
+            .build();
+
+    @Benchmark
+    public List<?> adapter(BenchmarkDatabase database) {
+        return database.adapterService.search(BenchmarkDatabase.ENTITY, probe);
+    }
+
+    @Benchmark
+    public List<?> direct(BenchmarkDatabase database) {
+        return database.searchService.search(BenchmarkDatabase.ENTITY, search).results();
+    }
+
+    public static class ItemProbe {
+        private final String name;
+        private final Long bucket;
+
+        ItemProbe(String name, Long bucket) {
+            this.name = name;
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The library on an in-memory H2 database seeded with {@code rows} synthetic {@link BenchItem}s, shared by the benchmarks of a trial.
+ * {@code width} is the number of text columns filled and projected, {@code depth} the length of the association path
+ * ({@code node.parent.parent.name}) each item is projected with.
+ * Result caching and single flight are off, so every invocation runs its query.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    static final String ENTITY = "benchitem";
+    static final String TABLE = "bench_item";
+    static final int BUCKETS = 100;
+    static final int MAX_WIDTH = 16;
+
+    @Param({"10000"})
+    public int rows;
+    @Param({"4", "16"})
+    public int width;
+    @Param({"1", "3"})
+    public int depth;
+
+    ConfigurableApplicationContext context;
+    JpaCriteriaSearchService searchService;
+    JpaCriteriaSearchDtoAdapterService adapterService;
+    JpaPatchService patchService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties("spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN",
+                        "rest-jpa-criteria-search.single-flight.enabled=false",
+                        "rest-jpa-criteria-search.result-cache.enabled=false")
+                .run();
+        searchService = context.getBean(JpaCriteriaSearchService.class);
+        adapterService = context.getBean(JpaCriteriaSearchDtoAdapterService.class);
+        patchService = context.getBean(JpaPatchService.class);
+        seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private void seed() {
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(org.springframework.transaction.PlatformTransactionManager.class));
+        List<BenchNode> leaves = new ArrayList<>();
+        transaction.executeWithoutResult(status -> {
+            for (int b = 0; b < BUCKETS; b++) {
+                BenchNode node = null;
+                for (int level = depth; level >= 1; level--) {
+                    node = new BenchNode("node-" + b + "-" + level, node);
+                    entityManager.persist(node);
+                }
+                leaves.add(node);
+            }
+        });
+        for (int start = 0; start < rows; start += 1000) {
+            int from = start;
+            transaction.executeWithoutResult(status -> {
+                for (int i = from; i < Math.min(rows, from + 1000); i++) {
+                    entityManager.persist(new BenchItem(i, width, leaves.get(i % BUCKETS)));
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+    }
+
+    /**
+     * The id, the name, the filled text columns and the name at the end of the association path.
+     */
+    String[] projection() {
+        List<String> projection = new ArrayList<>(List.of("id", "name", "amount"));
+        for (int c = 1; c <= width; c++) {
+            projection.add(BenchItem.column(c));
+        }
+        projection.add("node" + ".parent".repeat(depth - 1) + ".name");
+        return projection.toArray(new String[0]);
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class BenchmarkApplication {
+    }
+
+    @Entity(name = "BenchNode")
+    @Table(name = "bench_node")
+    public static class BenchNode {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String name;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private BenchNode parent;
+
+        protected BenchNode() {
+        }
+
+        BenchNode(String name, BenchNode parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BenchNode getParent() {
+            return parent;
+        }
+    }
+
+    @Entity(name = "BenchItem")
+    @Table(name = TABLE)
+    public static class BenchItem {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String name;
+        private Long bucket;
+        private Long amount;
+        private String status;
+        private String c1, c2, c3, c4, c5, c6, c7, c8, c9, c10, c11, c12, c13, c14, c15, c16;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private BenchNode node;
+
+        protected BenchItem() {
+        }
+
+        BenchItem(int i, int width, BenchNode node) {
+            this.name = "item-" + (i % BUCKETS) + "-" + i;
+            this.bucket = (long) (i % BUCKETS);
+            this.amount = (long) i;
+            this.status = "NEW";
+            this.node = node;
+            String[] values = new String[MAX_WIDTH];
+            for (int c = 0; c < width; c++) {
+                values[c] = "value-%02d-%08d".formatted(c + 1, i);
+            }
+            c1 = values[0]; c2 = values[1]; c3 = values[2]; c4 = values[3]; c5 = values[4]; c6 = values[5]; c7 = values[6]; c8 = values[7];
+            c9 = values[8]; c10 = values[9]; c11 = values[10]; c12 = values[11]; c13 = values[12]; c14 = values[13]; c15 = values[14]; c16 = values[15];
+        }
+
+        static String column(int c) {
+            return "c" + c;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getBucket() {
+            return bucket;
+        }
+
+        public Long getAmount() {
+            return amount;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getC1() { return c1; }
+        public String getC2() { return c2; }
+        public String getC3() { return c3; }
+        public String getC4() { return c4; }
+        public String getC5() { return c5; }
+        public String getC6() { return c6; }
+        public String getC7() { return c7; }
+        public String getC8() { return c8; }
+        public String getC9() { return c9; }
+        public String getC10() { return c10; }
+        public String getC11() { return c11; }
+        public String getC12() { return c12; }
+        public String getC13() { return c13; }
+        public String getC14() { return c14; }
+        public String getC15() { return c15; }
+        public String getC16() { return c16; }
+
+        public BenchNode getNode() {
+            return node;
+        }
+    }
+}
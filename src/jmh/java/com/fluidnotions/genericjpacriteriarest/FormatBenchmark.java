@@ -0,0 +1,77 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.Zstd;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Encoding one bucket of rows as JSON, Smile or CBOR, with and without compression, and decoding it the way a client would.
+ * The payload size of each combination is printed once per trial.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+    @Param({"identity", "gzip", "zstd"})
+    public String encoding;
+
+    private final Dto.Search search = Dto.Search.builder()
+            .where(Dto.Where.builder().equalsLong(Map.of("bucket", 7L)).build())
+            .build();
+    private final ResponseCompression compression = new ResponseCompression(0, 3);
+    private ResponseFormat responseFormat;
+    private ObjectMapper reader;
+    private byte[] payload;
+    private int bodySize;
+
+    @Setup(Level.Trial)
+    public void prepare(BenchmarkDatabase database) {
+        responseFormat = ResponseFormat.available().stream()
+                .filter(available -> available.name().equals(format))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(format + " is not on the classpath"));
+        reader = switch (format) {
+            case "smile" -> new ObjectMapper(new SmileFactory());
+            case "cbor" -> new ObjectMapper(new CBORFactory());
+            default -> new ObjectMapper();
+        };
+        byte[] body = database.searchService.searchAndSerialize(BenchmarkDatabase.ENTITY, search, responseFormat);
+        payload = compress(body);
+        bodySize = body.length;
+        System.out.printf("%n%s/%s: %d bytes, %d compressed%n", format, encoding, body.length, payload.length);
+    }
+
+    private byte[] compress(byte[] body) {
+        return "identity".equals(encoding) ? body : compression.compress(body, encoding).body();
+    }
+
+    @Benchmark
+    public byte[] encode(BenchmarkDatabase database) {
+        return compress(database.searchService.searchAndSerialize(BenchmarkDatabase.ENTITY, search, responseFormat));
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        byte[] body = switch (encoding) {
+            case "gzip" -> new GZIPInputStream(new ByteArrayInputStream(payload)).readAllBytes();
+            case "zstd" -> Zstd.decompress(payload, bodySize);
+            default -> payload;
+        };
+        return reader.readTree(body);
+    }
+}
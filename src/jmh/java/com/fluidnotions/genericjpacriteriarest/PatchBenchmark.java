@@ -0,0 +1,48 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updating {@code batch} rows one {@link JpaPatchService#patchTable} call at a time, against one {@link JpaPatchService#patchRows} call.
+ * An operation is the whole batch.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatchBenchmark {
+
+    @Param({"100", "1000"})
+    public int batch;
+
+    private List<Dto.PatchRow> rows;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        rows = new ArrayList<>(batch);
+        for (long id = 1; id <= batch; id++) {
+            rows.add(Dto.PatchRow.builder().key(id).values(Map.of("status", "PATCHED")).build());
+        }
+    }
+
+    @Benchmark
+    public void single(BenchmarkDatabase database) {
+        String status = "SINGLE-" + (invocation++ & 1);
+        for (Dto.PatchRow row : rows) {
+            database.patchService.patchTable(BenchmarkDatabase.TABLE, Map.of("status", status), "id", row.key());
+        }
+    }
+
+    @Benchmark
+    public Dto.BulkPatchResult bulk(BenchmarkDatabase database) {
+        return database.patchService.patchRows(BenchmarkDatabase.TABLE, "id", rows);
+    }
+}
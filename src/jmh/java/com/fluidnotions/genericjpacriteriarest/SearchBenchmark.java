@@ -0,0 +1,49 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * A search through {@link JpaCriteriaSearchService#searchAndSerialize} per predicate type, each matching one bucket (1% of the rows),
+ * with the SQL projection of {@link BenchmarkDatabase#projection()} or serializing whole entities.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"equals", "like", "in", "range"})
+    public String predicate;
+    @Param({"projection", "entity"})
+    public String serialization;
+
+    private Dto.Search search;
+
+    @Setup(Level.Trial)
+    public void prepare(BenchmarkDatabase database) {
+        long bucket = 7;
+        int perBucket = database.rows / BenchmarkDatabase.BUCKETS;
+        var where = switch (predicate) {
+            case "equals" -> Dto.Where.builder().equalsLong(Map.of("bucket", bucket));
+            case "like" -> Dto.Where.builder().like(Map.of("name", "item-" + bucket + "-"));
+            case "in" -> Dto.Where.builder().in(Map.of("amount", LongStream.range(0, perBucket).mapToObj(i -> (Object) (i * BenchmarkDatabase.BUCKETS + bucket)).toList()));
+            case "range" -> Dto.Where.builder().between(Map.of("amount", Dto.Range.builder().from(bucket * perBucket).to((bucket + 1) * perBucket - 1).build()));
+            default -> throw new IllegalArgumentException(predicate);
+        };
+        search = Dto.Search.builder()
+                .where(where.build())
+                .projection("projection".equals(serialization) ? database.projection() : null)
+                .build();
+    }
+
+    @Benchmark
+    public String searchAndSerialize(BenchmarkDatabase database) {
+        return database.searchService.searchAndSerialize(BenchmarkDatabase.ENTITY, search);
+    }
+}
@@ -0,0 +1,138 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing one bucket of loaded entities as JSON the way searches did before the serializer was built once, with a mapper built per
+ * search and projections filtered from a tree of every row, against {@link SearchResultSerializer} and its cached writers.
+ * No query runs in the measured code: the rows stay in an open EntityManager with their association path loaded.
+ * Both paths write the same JSON, checked once per trial.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({"projection", "entity"})
+    public String serialization;
+
+    private EntityManager entityManager;
+    private List<BenchmarkDatabase.BenchItem> rows;
+    private String[] projection;
+    private Jackson2ObjectMapperBuilder jacksonBuilder;
+    private SearchResultSerializer serializer;
+
+    @Setup(Level.Trial)
+    public void prepare(BenchmarkDatabase database) throws IOException {
+        entityManager = database.context.getBean(EntityManagerFactory.class).createEntityManager();
+        rows = entityManager.createQuery("select i from BenchItem i where i.bucket = 7 order by i.id", BenchmarkDatabase.BenchItem.class).getResultList();
+        for (BenchmarkDatabase.BenchItem row : rows) {
+            for (BenchmarkDatabase.BenchNode node = row.getNode(); node != null; node = node.getParent()) {
+                node.getName();
+            }
+        }
+        projection = "projection".equals(serialization) ? database.projection() : null;
+        jacksonBuilder = database.context.getBean(Jackson2ObjectMapperBuilder.class);
+        serializer = database.context.getBean(SearchResultSerializer.class);
+        ObjectMapper reader = new ObjectMapper();
+        if (!reader.readTree(treeFiltering()).equals(reader.readTree(compiledWriter()))) {
+            throw new IllegalStateException("The serializations differ");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        entityManager.close();
+    }
+
+    @Benchmark
+    public String treeFiltering() throws IOException {
+        return serializeEntityTypeList(rows, BenchmarkDatabase.BenchItem.class, projection);
+    }
+
+    @Benchmark
+    public byte[] compiledWriter() throws IOException {
+        return serializer.write(serializer.writerFor(BenchmarkDatabase.BenchItem.class, projection), rows, null, ResponseFormat.JSON);
+    }
+
+    private ObjectMapper objectMapper() {
+
+        @JsonIgnoreProperties({"hibernateLazyInitializer"})
+        record HibernateMixin() {
+        }
+
+        jacksonBuilder.mixIn(Object.class, HibernateMixin.class);
+        ObjectMapper objectMapper = jacksonBuilder.build();
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        return objectMapper;
+    }
+
+    /**
+     * The serialization searches used before {@link SearchResultSerializer}, kept as it was.
+     */
+    private String serializeEntityTypeList(List<?> results, Class<?> javaType, String[] searchProjection) throws IOException {
+        var objectMapper = objectMapper();
+
+        if (searchProjection != null && searchProjection.length > 0) {
+            SimpleModule module = new SimpleModule();
+            module.addSerializer(javaType, new JsonSerializer<Object>() {
+                @Override
+                public void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+                    ObjectMapper defaultMapper = objectMapper();
+                    ObjectNode objectNode = defaultMapper.valueToTree(value);
+
+                    List<String> projection = Arrays.stream(searchProjection).map(String::toLowerCase).toList();
+
+                    ObjectNode filteredNode = defaultMapper.createObjectNode();
+                    for (String path : projection) {
+                        String[] pathSegments = path.contains(".") ? path.split("\\.") : new String[]{path};
+                        buildFilteredNode(pathSegments, objectNode, filteredNode);
+                    }
+
+                    gen.writeTree(filteredNode);
+                }
+
+                private static void buildFilteredNode(String[] pathSegments, ObjectNode objectNode, ObjectNode filteredNode) {
+                    ObjectNode currentNode = objectNode;
+                    for (String segment : pathSegments) {
+                        if (currentNode.has(segment)) {
+                            JsonNode childNode = currentNode.get(segment);
+                            if (childNode.isObject()) {
+                                currentNode = (ObjectNode) childNode;
+                            }
+                            else {
+                                filteredNode.set(segment, childNode);
+                                break;
+                            }
+                        }
+                        else {
+                            break;
+                        }
+                    }
+                }
+            });
+
+            objectMapper.registerModule(module);
+        }
+        var javaTypeList = TypeFactory.defaultInstance().constructCollectionType(List.class, javaType);
+        var writer = objectMapper.writerFor(javaTypeList);
+        return writer.writeValueAsString(results);
+    }
+}
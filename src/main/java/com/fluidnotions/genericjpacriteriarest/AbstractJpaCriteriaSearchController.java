@@ -0,0 +1,176 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.persistence.QueryTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The search endpoints but the search itself, which {@link JpaCriteriaSearchController} answers on the request thread
+ * and {@link AsyncJpaCriteriaSearchController} on the search executor.
+ */
+@Slf4j
+public abstract class AbstractJpaCriteriaSearchController {
+
+    protected final JpaCriteriaSearchService jpaCriteriaSearchService;
+    protected final BatchSearchService batchSearchService;
+    protected final ResponseCompression responseCompression;
+
+    protected AbstractJpaCriteriaSearchController(@Nullable JpaCriteriaSearchService jpaCriteriaSearchService, @Nullable BatchSearchService batchSearchService,
+                                                  @Nullable ResponseCompression responseCompression) {
+        this.jpaCriteriaSearchService = jpaCriteriaSearchService;
+        this.batchSearchService = batchSearchService;
+        this.responseCompression = responseCompression;
+    }
+
+    /**
+     * The tag of the response, null when tags are off.
+     */
+    @Nullable
+    protected String etag(String entityName, Dto.Search search, ResponseFormat format) throws HttpResponseException {
+        try {
+            assert jpaCriteriaSearchService != null;
+            return jpaCriteriaSearchService.etag(entityName, search, format);
+        } catch (Exception e) {
+            throw httpResponseException("Error occurred searching :\n", e);
+        }
+    }
+
+    /**
+     * 304 when the tag is one the client has, null otherwise.
+     */
+    @Nullable
+    protected ResponseEntity<byte[]> notModified(@Nullable String etag, @Nullable String ifNoneMatch) {
+        return etag != null && matches(ifNoneMatch, etag) ? vary(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)).build() : null;
+    }
+
+    protected ResponseEntity<byte[]> searchResponse(byte[] body, ResponseFormat format, @Nullable String etag, @Nullable String acceptEncoding) {
+        var response = vary(ResponseEntity.ok().contentType(format.mediaType()));
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        if (responseCompression == null) {
+            return response.body(body);
+        }
+        var compressed = responseCompression.compress(body, acceptEncoding);
+        if (compressed.encoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, compressed.encoding());
+        }
+        return response.body(compressed.body());
+    }
+
+    private ResponseEntity.BodyBuilder vary(ResponseEntity.BodyBuilder response) {
+        return responseCompression == null ? response.varyBy(HttpHeaders.ACCEPT) : response.varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    @Operation(summary = "streaming criteria search on any entity", description = "same criteria as search, rows are written to the response as they are read, format json (array) or ndjson (one row per line)", tags = {"1. generic-jpa-criteria-rest"})
+    @PostMapping(value = "/search/{entity}/stream", produces = {"application/json", "application/x-ndjson", "application/x-jackson-smile", "application/cbor"}, consumes = "application/json")
+    public ResponseEntity<StreamingResponseBody> searchStream(@PathVariable(name = "entity") String entityName, @RequestParam(name = "format", defaultValue = "json") String format,
+                                                              @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept, @RequestBody Dto.Search search) throws HttpResponseException {
+        try {
+            assert jpaCriteriaSearchService != null;
+            var streamFormat = Dto.StreamFormat.valueOf(format.toUpperCase());
+            var negotiated = streamFormat == Dto.StreamFormat.NDJSON ? null : ResponseFormat.negotiate(accept);
+            var responseFormat = negotiated != null ? negotiated : ResponseFormat.JSON;
+            var body = jpaCriteriaSearchService.streamSearch(entityName, search, streamFormat, responseFormat);
+            var contentType = streamFormat == Dto.StreamFormat.NDJSON ? MediaType.APPLICATION_NDJSON : responseFormat.mediaType();
+            return ResponseEntity.ok().contentType(contentType).varyBy(HttpHeaders.ACCEPT).body(body);
+        } catch (Exception e) {
+            throw httpResponseException("Error occurred searching :\n", e);
+        }
+    }
+
+    @Operation(summary = "aggregate query on any entity", description = "same where criteria as search, with count, countDistinct, sum, min, max and avg of whitelisted attributes, optionally grouped by whitelisted attributes; one row per group", tags = {"1. generic-jpa-criteria-rest"})
+    @PostMapping(value = "/aggregate/{entity}", produces = "application/json", consumes = "application/json")
+    public List<Map<String, Object>> aggregate(@PathVariable(name = "entity") String entityName, @RequestBody Dto.Aggregate aggregate) throws HttpResponseException {
+        try {
+            assert jpaCriteriaSearchService != null;
+            return jpaCriteriaSearchService.aggregate(entityName, aggregate);
+        } catch (Exception e) {
+            throw httpResponseException("Error occurred aggregating :\n", e);
+        }
+    }
+
+    @Operation(summary = "several criteria searches in one request", description = "named searches on any entities run concurrently, the response has each result under its name as it completes, or {\"error\": ...} for a search that failed or did not complete in time", tags = {"1. generic-jpa-criteria-rest"})
+    @PostMapping(value = "/batch/search", produces = "application/json", consumes = "application/json")
+    public ResponseEntity<StreamingResponseBody> batchSearch(@RequestBody Map<String, Dto.BatchSearch> searches) {
+        assert batchSearchService != null;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(batchSearchService.batchSearch(searches));
+    }
+
+    /**
+     * Weak comparison of the tag with those of an {@code If-None-Match} header, or {@code *}.
+     */
+    private static boolean matches(@Nullable String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws HttpResponseException with 406 when none of the accepted media types is available
+     */
+    protected static ResponseFormat responseFormat(String accept) throws HttpResponseException {
+        ResponseFormat format;
+        try {
+            format = ResponseFormat.negotiate(accept);
+        } catch (IllegalArgumentException e) {
+            throw new HttpResponseException("Invalid Accept header :\n" + e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        if (format == null) {
+            throw new HttpResponseException("Cannot answer with %s, available are %s".formatted(accept, ResponseFormat.available().stream().map(ResponseFormat::mediaType).toList()), HttpStatus.NOT_ACCEPTABLE);
+        }
+        return format;
+    }
+
+    /**
+     * Guard rejections keep their status, a full async queue is answered with 503, timed out statements and requests with 504,
+     * anything else is a bad request. A rollback that failed after the statement, as when the pool drops a connection whose
+     * statement was cancelled, is answered for the exception it overrode.
+     */
+    protected static HttpResponseException httpResponseException(String message, Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransactionSystemException rollback && rollback.getApplicationException() != null) {
+                return httpResponseException(message, rollback.getApplicationException());
+            }
+            if (cause instanceof SearchRejectedException rejected) {
+                return new HttpResponseException(rejected.getMessage(), rejected.getHttpStatus());
+            }
+            if (cause instanceof RejectedExecutionException) {
+                return new HttpResponseException(cause.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            if (cause instanceof QueryTimeoutException || cause instanceof org.hibernate.QueryTimeoutException || cause instanceof org.springframework.dao.QueryTimeoutException) {
+                return new HttpResponseException("Query timed out :\n" + cause.getMessage(), HttpStatus.GATEWAY_TIMEOUT);
+            }
+            if (cause instanceof TimeoutException) {
+                return new HttpResponseException("Search did not complete in time", HttpStatus.GATEWAY_TIMEOUT);
+            }
+        }
+        return new HttpResponseException(message + e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(HttpResponseException.class)
+    public ResponseEntity<String> handleHttpResponseException(HttpResponseException e) {
+        return ResponseEntity.status(e.getHttpStatus()).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+}
@@ -0,0 +1,59 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * What the patch endpoints of {@link JpaPatchController}, on the request thread, and {@link AsyncJpaPatchController},
+ * on the patch executor, have in common.
+ */
+public abstract class AbstractJpaPatchController {
+
+    protected final JpaPatchService jpaPatchService;
+    protected final WriteBehindPatchQueue writeBehindPatchQueue;
+
+    protected AbstractJpaPatchController(JpaPatchService jpaPatchService, @Nullable WriteBehindPatchQueue writeBehindPatchQueue) {
+        this.jpaPatchService = jpaPatchService;
+        this.writeBehindPatchQueue = writeBehindPatchQueue;
+    }
+
+    /**
+     * Queues the patch when write-behind is on, which is answered on the request thread in either mode.
+     *
+     * @return 202 once queued, 503 when the queue is full, null without write-behind
+     */
+    @Nullable
+    protected ResponseEntity<Void> enqueue(String tableName, Map<String, Object> params, String primaryKey, Object primaryKeyValue) throws HttpResponseException {
+        if (writeBehindPatchQueue == null) {
+            return null;
+        }
+        try {
+            writeBehindPatchQueue.enqueue(tableName, params, primaryKey, primaryKeyValue);
+            return ResponseEntity.accepted().build();
+        } catch (RejectedExecutionException e) {
+            return serviceUnavailable();
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e);
+        }
+    }
+
+    protected static HttpResponseException badRequest(Throwable e) {
+        return new HttpResponseException("Invalid patch :\n" + e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    protected static <T> ResponseEntity<T> serviceUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    @ExceptionHandler(HttpResponseException.class)
+    public ResponseEntity<String> handleHttpResponseException(HttpResponseException e) {
+        return ResponseEntity.status(e.getHttpStatus()).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+}
@@ -0,0 +1,46 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The attributes aggregations may group by and aggregate, per entity, from {@code aggregate.attributes.<entity>=a,b,c}
+ * ({@code *} for all basic attributes). Entities without an entry cannot be aggregated, and only basic attributes qualify,
+ * so an aggregation never selects an association.
+ */
+public class AggregationWhitelist {
+
+    private static final String ALL = "*";
+
+    private final Map<EntityType<?>, Set<String>> attributes;
+
+    /**
+     * @throws IllegalArgumentException when an entity of the configuration is not known
+     */
+    AggregationWhitelist(EntityRegistry entityRegistry, Map<String, String[]> attributes) {
+        Map<EntityType<?>, Set<String>> whitelist = new HashMap<>();
+        attributes.forEach((entityName, names) -> whitelist.put(entityRegistry.entry(entityName).entityType(),
+                Stream.of(names).map(String::trim).map(String::toLowerCase).collect(Collectors.toUnmodifiableSet())));
+        this.attributes = Map.copyOf(whitelist);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the attribute does not exist, is not basic, or is not whitelisted for aggregations
+     */
+    SingularAttribute<?, ?> attribute(EntityRegistry.Entry entry, String name) {
+        Set<String> allowed = attributes.get(entry.entityType());
+        SingularAttribute<?, ?> attribute = entry.attribute(name);
+        if (allowed == null || attribute == null || attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC
+                || !(allowed.contains(ALL) || allowed.contains(attribute.getName().toLowerCase()))) {
+            throw new IllegalArgumentException("'%s' is not an aggregate attribute of %s".formatted(name, entry.entityType().getName()));
+        }
+        return attribute;
+    }
+}
@@ -0,0 +1,138 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.QueryTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the requests of one kind, searches or patches, off the servlet threads, so slow queries hold a thread of this pool instead of one
+ * of the server. At most {@code max-concurrency} run at the same time, on virtual threads when the JVM has them (21+), and at most
+ * {@code queue-capacity} wait; beyond that a request is rejected at once. A request gets {@code timeout} from its arrival: its future fails
+ * with a {@link TimeoutException} then, and its statements are given only the time left, so the driver cancels them, see {@link RequestDeadline}.
+ */
+@Slf4j
+public class AsyncExecutor implements AutoCloseable {
+
+    private final String name;
+    private final Duration timeout;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    AsyncExecutor(String name, int maxConcurrency, int queueCapacity, Duration timeout, boolean virtualThreads) {
+        this.name = name;
+        this.timeout = timeout;
+        int threads = Math.max(1, maxConcurrency);
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        ThreadFactory virtualThreadFactory = virtualThreads ? virtualThreadFactory(name) : null;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue,
+                virtualThreadFactory != null ? virtualThreadFactory : daemonThreadFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+        log.debug("Async {} run on {} {} threads, {} queued at most", name, threads, virtualThreadFactory != null ? "virtual" : "platform", queueCapacity);
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "async-" + name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("async-" + name + "-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * @return the result of the work, failed with a {@link RejectedExecutionException} when the queue is full, or with a
+     * {@link TimeoutException} when the work has not completed within the timeout
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return submit(System.nanoTime() + timeout.toNanos(), work);
+    }
+
+    /**
+     * Like {@link #submit(Supplier)}, with the deadline of a larger request the work belongs to, such as the searches of a batch.
+     */
+    <T> CompletableFuture<T> submit(long deadline, Supplier<T> work) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new QueryTimeoutException("Request timed out waiting in the %s queue".formatted(name));
+                }
+                return RequestDeadline.run(deadline, work);
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many %s requests, try again later".formatted(name), e));
+        }
+        return future.orTimeout(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS).whenComplete((result, e) -> {
+            if (e instanceof TimeoutException) {
+                timedOut.increment();
+            }
+        });
+    }
+
+    /**
+     * {@code search} or {@code patch}.
+     */
+    public String name() {
+        return name;
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Requests running.
+     */
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Requests waiting for a thread.
+     */
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Requests refused for a full queue.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Requests answered with a timeout; their work may still have been running.
+     */
+    public long timedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
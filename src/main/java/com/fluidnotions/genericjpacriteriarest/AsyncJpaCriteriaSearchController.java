@@ -0,0 +1,51 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The search endpoints with searches run on the search executor, registered instead of {@link JpaCriteriaSearchController}
+ * when {@code async.enabled} is set. The {@code If-None-Match} check stays on the request thread.
+ */
+@Slf4j
+@RestController
+@RequestMapping("${rest-jpa-criteria-search.controller-path-prefix:/}")
+public class AsyncJpaCriteriaSearchController extends AbstractJpaCriteriaSearchController {
+
+    private final AsyncExecutor searchExecutor;
+
+    public AsyncJpaCriteriaSearchController(JpaCriteriaSearchService jpaCriteriaSearchService, BatchSearchService batchSearchService, @Nullable ResponseCompression responseCompression,
+                                            AsyncExecutor searchExecutor) {
+        super(jpaCriteriaSearchService, batchSearchService, responseCompression);
+        this.searchExecutor = searchExecutor;
+    }
+
+    @Operation(summary = "criteria search on any entity", description = "matches on like string ignoring case, numbers equal, projection list; JSON, or Smile or CBOR by the Accept header; with etag.enabled answers If-None-Match with 304 while the entity's tables are unchanged; 503 when the search executor is full, 504 when the search does not complete in time", tags = {"1. generic-jpa-criteria-rest"})
+    @PostMapping(value = "/search/{entity}", produces = {"application/json", "application/x-jackson-smile", "application/cbor"}, consumes = "application/json")
+    public CompletableFuture<ResponseEntity<byte[]>> search(@PathVariable(name = "entity") String entityName,
+                                                            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+                                                            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                            @RequestBody Dto.Search search) throws HttpResponseException {
+        ResponseFormat format = responseFormat(accept);
+        String etag = etag(entityName, search, format);
+        ResponseEntity<byte[]> notModified = notModified(etag, ifNoneMatch);
+        if (notModified != null) {
+            return CompletableFuture.completedFuture(notModified);
+        }
+        return searchExecutor.submit(() -> jpaCriteriaSearchService.searchAndSerialize(entityName, search, format))
+                .handle((body, e) -> {
+                    if (e != null) {
+                        throw new CompletionException(httpResponseException("Error occurred searching :\n", e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+                    }
+                    return searchResponse(body, format, etag, acceptEncoding);
+                });
+    }
+}
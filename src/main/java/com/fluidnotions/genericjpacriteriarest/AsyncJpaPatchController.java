@@ -0,0 +1,93 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.persistence.QueryTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * The patch endpoints with patches run on the patch executor, apart from the searches, registered instead of {@link JpaPatchController}
+ * when {@code async.enabled} is set. Write-behind patches are still queued on the request thread.
+ */
+@Slf4j
+@RestController
+@RequestMapping("${rest-jpa-criteria-search.controller-path-prefix:/}")
+public class AsyncJpaPatchController extends AbstractJpaPatchController {
+
+    private final AsyncExecutor patchExecutor;
+
+    public AsyncJpaPatchController(JpaPatchService jpaPatchService, @Nullable WriteBehindPatchQueue writeBehindPatchQueue, AsyncExecutor patchExecutor) {
+        super(jpaPatchService, writeBehindPatchQueue);
+        this.patchExecutor = patchExecutor;
+    }
+
+    @Operation(summary = "Patch update by table column name on any table", description = "Patch update by table column name on any table independent of project orm mappings. The payload is json property name is column name and value. With write-behind enabled the patch is queued and written asynchronously (202), 503 when the queue is full", tags = {"2. generic-jpa-criteria-rest"})
+    @PatchMapping("patch/{tableName}/{primaryKey}/{primaryKeyValue}")
+    public CompletableFuture<ResponseEntity<Void>> updateTable(
+            @PathVariable String tableName, @PathVariable String primaryKey, @PathVariable Object primaryKeyValue, @RequestBody Map<String, Object> params
+    ) throws HttpResponseException {
+        log.debug("Updating table: {} with params: {}", tableName, params);
+        ResponseEntity<Void> queued = enqueue(tableName, params, primaryKey, primaryKeyValue);
+        if (queued != null) {
+            return CompletableFuture.completedFuture(queued);
+        }
+        return execute(() -> {
+            jpaPatchService.patchTable(tableName, params, primaryKey, primaryKeyValue);
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    @Operation(summary = "Patch many rows of any table", description = "Patch update of many rows of a table by primary key column name. The payload is a list of {key, values}, values maps column names to new values. Rows are sent in JDBC batches and committed in chunks, the response has the update count of each row", tags = {"2. generic-jpa-criteria-rest"})
+    @PatchMapping("patch/{tableName}/{primaryKey}")
+    public CompletableFuture<ResponseEntity<Dto.BulkPatchResult>> updateRows(
+            @PathVariable String tableName, @PathVariable String primaryKey, @RequestBody List<Dto.PatchRow> rows
+    ) {
+        log.debug("Updating {} rows of table: {}", rows.size(), tableName);
+        return execute(() -> ResponseEntity.ok(jpaPatchService.patchRows(tableName, primaryKey, rows)));
+    }
+
+    /**
+     * Invalid tables, columns and values are answered with 400, a full queue with 503 and a patch not done in time with 504,
+     * though its transaction may still commit if its statements completed.
+     */
+    private <T> CompletableFuture<ResponseEntity<T>> execute(Supplier<ResponseEntity<T>> patch) {
+        return patchExecutor.submit(patch).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IllegalArgumentException) {
+                throw new CompletionException(badRequest(cause));
+            }
+            if (cause instanceof RejectedExecutionException) {
+                return serviceUnavailable();
+            }
+            if (timedOut(cause)) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+            }
+            throw e instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
+
+    private static boolean timedOut(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransactionSystemException rollback && rollback.getApplicationException() != null) {
+                return timedOut(rollback.getApplicationException());
+            }
+            if (cause instanceof TimeoutException || cause instanceof QueryTimeoutException || cause instanceof org.hibernate.QueryTimeoutException
+                    || cause instanceof org.springframework.dao.QueryTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
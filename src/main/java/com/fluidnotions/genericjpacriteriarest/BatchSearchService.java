@@ -0,0 +1,112 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Runs the named searches of a batch concurrently and writes them as one JSON object, each search under its name as soon as it completes.
+ * Every search runs on its own thread, so in its own transaction and EntityManager. A failing search is written as {@code {"error": "..."}}
+ * without affecting the others, and the searches still running at the deadline are reported the same way.
+ * Searches run on an {@link AsyncExecutor} of {@code batch.max-concurrency} threads, virtual when the JVM has them (21+), with at most
+ * {@code batch.queue-capacity} waiting; a search beyond that fails at once. Their statements get only the time left before the batch
+ * deadline, see {@link RequestDeadline}, so the driver cancels a statement still running when the batch times out.
+ */
+@Slf4j
+public class BatchSearchService implements AutoCloseable {
+
+    private final JpaCriteriaSearchService jpaCriteriaSearchService;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final AsyncExecutor executor;
+
+    BatchSearchService(JpaCriteriaSearchService jpaCriteriaSearchService, ObjectMapper objectMapper, int maxConcurrency, int queueCapacity, Duration timeout, boolean virtualThreads) {
+        this.jpaCriteriaSearchService = jpaCriteriaSearchService;
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.executor = new AsyncExecutor("batch", maxConcurrency, queueCapacity, timeout, virtualThreads);
+    }
+
+    public StreamingResponseBody batchSearch(Map<String, Dto.BatchSearch> searches) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        BlockingQueue<Map.Entry<String, Future<String>>> completed = new LinkedBlockingQueue<>();
+        Map<String, Future<String>> running = new LinkedHashMap<>();
+        searches.forEach((name, batchSearch) -> {
+            CompletableFuture<String> future = executor.submit(deadline, () -> search(batchSearch));
+            running.put(name, future);
+            future.whenComplete((json, e) -> completed.add(Map.entry(name, future)));
+        });
+        return out -> {
+            try (JsonGenerator gen = objectMapper.createGenerator(StreamUtils.nonClosing(out))) {
+                gen.writeStartObject();
+                int remaining = running.size();
+                while (remaining > 0) {
+                    Map.Entry<String, Future<String>> result = completed.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (result == null) {
+                        break;
+                    }
+                    remaining--;
+                    running.remove(result.getKey());
+                    writeResult(gen, result.getKey(), result.getValue());
+                    gen.flush();
+                }
+                for (String timedOut : running.keySet()) {
+                    writeError(gen, timedOut, timedOut());
+                }
+                gen.writeEndObject();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private String search(Dto.BatchSearch batchSearch) {
+        if (batchSearch == null || batchSearch.entity() == null || batchSearch.search() == null) {
+            throw new IllegalArgumentException("entity and search are required");
+        }
+        return jpaCriteriaSearchService.searchAndSerialize(batchSearch.entity(), batchSearch.search());
+    }
+
+    private void writeResult(JsonGenerator gen, String name, Future<String> future) throws IOException {
+        try {
+            String json = future.get();
+            gen.writeFieldName(name);
+            gen.writeRawValue(json);
+        } catch (CancellationException e) {
+            writeError(gen, name, "Cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                writeError(gen, name, timedOut());
+                return;
+            }
+            log.debug("Batch search {} failed", name, e.getCause());
+            writeError(gen, name, String.valueOf(e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeError(gen, name, "Interrupted");
+        }
+    }
+
+    private String timedOut() {
+        return "Timed out after %d ms".formatted(timeout.toMillis());
+    }
+
+    private static void writeError(JsonGenerator gen, String name, String message) throws IOException {
+        gen.writeObjectFieldStart(name);
+        gen.writeStringField("error", message);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,33 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+/**
+ * Where the time of searches and patches goes. Searches report per entity and query shape (the operators and fields of the
+ * where criteria) and per path ({@code projection} for SQL projections, {@code entity} otherwise) the latency of each phase:
+ * {@code resolve} (entity, paging and projection), {@code plan} (criteria and compiled query), {@code execute} (SQL and, on the
+ * entity path, hydration), {@code count} and {@code serialize}.
+ * {@link #NOOP} is used unless Micrometer is on the classpath with a {@code MeterRegistry}, see {@link MicrometerCriteriaRestMetrics}.
+ */
+public interface CriteriaRestMetrics {
+
+    CriteriaRestMetrics NOOP = new CriteriaRestMetrics() {
+    };
+
+    default void phase(String entityName, String shape, String path, String phase, long nanos) {
+    }
+
+    default void rows(String entityName, String shape, int rows) {
+    }
+
+    default void bytes(String entityName, String shape, long bytes) {
+    }
+
+    /**
+     * Rows sent to the database in one statement or JDBC batch.
+     */
+    default void patchBatch(String tableName, int rows) {
+    }
+
+    default boolean enabled() {
+        return this != NOOP;
+    }
+}
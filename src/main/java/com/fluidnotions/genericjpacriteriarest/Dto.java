@@ -1,5 +1,7 @@
 package com.fluidnotions.genericjpacriteriarest;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.metamodel.EntityType;
 import lombok.Builder;
 
@@ -10,14 +12,137 @@ import java.util.Set;
 public interface Dto {
 
     @Builder
-    record Search(Where where, String[] projection) {
+    record Search(Where where, String[] projection, Integer limit, Integer offset, List<OrderBy> orderBy, Boolean keyset, String cursor, Boolean count) {
+
+        /**
+         * An unpaged search.
+         */
+        public Search(Where where, String[] projection) {
+            this(where, projection, null, null, null, null, null, null);
+        }
+    }
+
+    @Builder
+    record OrderBy(String field, boolean desc) {
+    }
+
+    /**
+     * Values of {@code in}, {@code between} and the comparisons are converted to the type of their attribute, e.g. ISO dates for date attributes.
+     * {@code between} and the comparisons apply to numeric, temporal and other comparable attributes.
+     * {@code likeMode} sets how the {@code like} value of a field matches, see {@link MatchMode}.
+     */
+    @Builder
+    record Where(Map<String, String> like, Map<String, MatchMode> likeMode, Map<String, Long> equalsLong, Map<String, Long> notEqualsLong, Map<String, String> equalsString, Set<String> isNull, Set<String> isNotNull,
+                 Map<String, List<Object>> in, Map<String, Range> between, Map<String, Object> gt, Map<String, Object> gte, Map<String, Object> lt, Map<String, Object> lte) {
+
+        /**
+         * Criteria without {@code likeMode}, {@code in}, {@code between} and the comparisons.
+         */
+        public Where(Map<String, String> like, Map<String, Long> equalsLong, Map<String, Long> notEqualsLong, Map<String, String> equalsString, Set<String> isNull, Set<String> isNotNull) {
+            this(like, null, equalsLong, notEqualsLong, equalsString, isNull, isNotNull, null, null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Both bounds are inclusive.
+     */
+    @Builder
+    record Range(Object from, Object to) {
+    }
+
+    @Builder
+    record BatchSearch(String entity, Search search) {
+    }
+
+    /**
+     * How a {@code like} criterion matches. {@code containsIgnoreCase}, the default, is {@code lower(field) like '%value%'} and cannot use
+     * an ordinary index; {@code startsWith} and {@code exact} can use a plain index on the column, their ignore case variants one on {@code lower(column)}.
+     */
+    enum MatchMode {
+        CONTAINS_IGNORE_CASE, CONTAINS, STARTS_WITH, STARTS_WITH_IGNORE_CASE, EXACT, EXACT_IGNORE_CASE;
+
+        @JsonCreator
+        public static MatchMode of(String name) {
+            return valueOf(name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+        }
+    }
+
+    @Builder
+    record Aggregate(Where where, List<String> groupBy, List<Aggregation> aggregations) {
+    }
+
+    /**
+     * @param field the aggregated attribute, only optional for {@code count}
+     * @param alias name of the value in the result rows, defaults to the function followed by the field, e.g. {@code sumAmount}
+     */
+    @Builder
+    record Aggregation(AggregateFunction function, String field, String alias) {
+    }
+
+    enum AggregateFunction {
+        COUNT, COUNT_DISTINCT, SUM, MIN, MAX, AVG;
+
+        /**
+         * Accepts the names as they are written in requests, {@code count}, {@code countDistinct} and so on, as well as the constant names.
+         */
+        @JsonCreator
+        public static AggregateFunction of(String name) {
+            return valueOf(name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+        }
+    }
+
+    @Builder
+    record PatchRow(Object key, Map<String, Object> values) {
+    }
+
+    @Builder
+    record BulkPatchResult(int[] rowCounts, long updated) {
+    }
+
+    enum StreamFormat {
+        JSON, NDJSON
+    }
+
+    @Builder
+    record SearchResult(List<?> results, EntityType<?> entityType, String nextCursor, Long total, Boolean truncated) {
+
+        public SearchResult(List<?> results, EntityType<?> entityType) {
+            this(results, entityType, null, null, null);
+        }
+    }
+
+    /**
+     * The envelope of paged and truncated results, written around the rows by {@link SearchResultSerializer}.
+     */
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record PagedResults(String nextCursor, Long total, Boolean truncated) {
+    }
+
+    /**
+     * @param candidates indexes no existing index serves, most estimated time saved first
+     * @param predicates how often each operator was used on each attribute and how long its searches took
+     */
+    @Builder
+    record IndexReport(List<IndexCandidate> candidates, List<PredicateUsage> predicates) {
     }
 
+    /**
+     * @param columns              equality columns, most searched first, then at most one range column
+     * @param partialIndex         an existing index of the table starting with one of the columns, when there is one
+     * @param estimatedSavedMillis the time spent in the searches, half of it when a partial index already narrows them
+     * @param ddl                  a statement creating the index
+     */
     @Builder
-    record Where(Map<String, String> like, Map<String, Long> equalsLong, Map<String, Long> notEqualsLong, Map<String, String> equalsString, Set<String> isNull, Set<String> isNotNull) {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record IndexCandidate(String entity, String table, List<String> columns, long searches, double totalMillis, double averageMillis,
+                          String partialIndex, double estimatedSavedMillis, String ddl) {
     }
 
+    /**
+     * @param indexable whether an index on the column can serve the operator
+     */
     @Builder
-    record SearchResult(List<?> results, EntityType<?> entityType) {
+    record PredicateUsage(String entity, String attribute, String operator, boolean indexable, long searches, double totalMillis, double averageMillis) {
     }
 }
@@ -0,0 +1,164 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * How {@link JpaCriteriaSearchDtoAdapterService} turns the objects of one class into a {@link Dto.Search}: built once per class
+ * and kept in a {@link ClassValue}, so converting an object only reads its values through method handles and fills the maps of the search.
+ * <p>
+ * The components of a record, or the instance fields of a class and its superclasses, map to
+ * <ul>
+ *     <li>{@code like} for strings,</li>
+ *     <li>{@code equalsLong} for {@code long}, {@code int}, {@code short} and {@code byte} and their wrappers,</li>
+ *     <li>{@code equalsString} for enums (by name), {@code java.time} values (ISO), booleans, characters, UUIDs and other numbers,
+ *     converted back to the attribute type like any {@code equalsString} value,</li>
+ *     <li>{@code in} for collections.</li>
+ * </ul>
+ * Null values add no criterion. Fields of other types are left out, which is logged once when the plan is built.
+ */
+@Slf4j
+final class DtoSearchPlan {
+
+    private static final ClassValue<DtoSearchPlan> PLANS = new ClassValue<>() {
+        @Override
+        protected DtoSearchPlan computeValue(Class<?> type) {
+            return new DtoSearchPlan(type);
+        }
+    };
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final Accessor[] accessors;
+    private final int[] counts = new int[Kind.values().length];
+
+    static DtoSearchPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    private DtoSearchPlan(Class<?> type) {
+        List<Accessor> accessors = new ArrayList<>();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            if (type.isRecord()) {
+                for (RecordComponent component : type.getRecordComponents()) {
+                    add(accessors, type, component.getName(), component.getType(), lookup.unreflect(component.getAccessor()));
+                }
+            } else {
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    MethodHandles.Lookup declaringLookup = c == type ? lookup : MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+                    for (Field field : c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                            add(accessors, type, field.getName(), field.getType(), declaringLookup.unreflectGetter(field));
+                        }
+                    }
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot read the fields of %s, open its package to this library".formatted(type.getName()), e);
+        }
+        this.accessors = accessors.toArray(new Accessor[0]);
+        for (Accessor accessor : this.accessors) {
+            counts[accessor.kind().ordinal()]++;
+        }
+    }
+
+    private static void add(List<Accessor> accessors, Class<?> type, String name, Class<?> valueType, MethodHandle getter) {
+        Kind kind = Kind.of(valueType);
+        if (kind == null) {
+            log.warn("{}.{}: {} fields are not supported and left out of the search", type.getName(), name, valueType.getName());
+            return;
+        }
+        if (accessors.stream().noneMatch(accessor -> accessor.name().equals(name))) {
+            accessors.add(new Accessor(name, kind, getter.asType(GETTER)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    Dto.Search search(Object dto) {
+        Map<String, String> like = null;
+        Map<String, Long> equalsLong = null;
+        Map<String, String> equalsString = null;
+        Map<String, List<Object>> in = null;
+        for (Accessor accessor : accessors) {
+            Object value = accessor.get(dto);
+            if (value == null) {
+                continue;
+            }
+            switch (accessor.kind()) {
+                case LIKE -> {
+                    like = like != null ? like : map(Kind.LIKE);
+                    like.put(accessor.name(), (String) value);
+                }
+                case EQUALS_LONG -> {
+                    equalsLong = equalsLong != null ? equalsLong : map(Kind.EQUALS_LONG);
+                    equalsLong.put(accessor.name(), value instanceof Long longValue ? longValue : ((Number) value).longValue());
+                }
+                case EQUALS -> {
+                    equalsString = equalsString != null ? equalsString : map(Kind.EQUALS);
+                    equalsString.put(accessor.name(), value instanceof Enum<?> enumValue ? enumValue.name() : value.toString());
+                }
+                case IN -> {
+                    in = in != null ? in : map(Kind.IN);
+                    in.put(accessor.name(), value instanceof List<?> list ? (List<Object>) list : new ArrayList<>((Collection<?>) value));
+                }
+            }
+        }
+        return Dto.Search.builder()
+                .where(Dto.Where.builder().like(like).equalsLong(equalsLong).equalsString(equalsString).in(in).build())
+                .build();
+    }
+
+    private <V> Map<String, V> map(Kind kind) {
+        return new HashMap<>((int) Math.ceil(counts[kind.ordinal()] / 0.75));
+    }
+
+    private enum Kind {
+        LIKE, EQUALS_LONG, EQUALS, IN;
+
+        static Kind of(Class<?> type) {
+            if (type == String.class) {
+                return LIKE;
+            }
+            if (type == long.class || type == Long.class || type == int.class || type == Integer.class
+                    || type == short.class || type == Short.class || type == byte.class || type == Byte.class) {
+                return EQUALS_LONG;
+            }
+            if (type.isEnum() || TemporalAccessor.class.isAssignableFrom(type) || type == boolean.class || type == Boolean.class
+                    || type == char.class || type == Character.class || type == UUID.class
+                    || (type.isPrimitive() && type != void.class) || Number.class.isAssignableFrom(type)) {
+                return EQUALS;
+            }
+            if (Collection.class.isAssignableFrom(type)) {
+                return IN;
+            }
+            return null;
+        }
+    }
+
+    private record Accessor(String name, Kind kind, MethodHandle getter) {
+
+        Object get(Object dto) {
+            try {
+                return (Object) getter.invokeExact(dto);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot read %s of %s".formatted(name, dto.getClass().getName()), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import jakarta.persistence.metamodel.Type;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.MappingMetamodel;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable lookup tables built once from the metamodel: lowercased entity names (and their names without the
+ * {@code entity-name-fallback-prefix}) to entities, and per entity lowercased attribute names to singular attributes,
+ * inherited {@code @MappedSuperclass} attributes included, and the tables each entity reads from.
+ * Resolving a request is a couple of hash lookups, no reflection.
+ */
+@Slf4j
+public class EntityRegistry {
+
+    private final Map<String, Entry> entries;
+
+    EntityRegistry(EntityManagerFactory entityManagerFactory, String entityNameFallbackPrefix) {
+        MappingMetamodel mappingMetamodel = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getRuntimeMetamodels().getMappingMetamodel();
+        Map<String, Entry> entries = new HashMap<>();
+        for (EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+            Map<String, SingularAttribute<?, ?>> attributes = new HashMap<>();
+            for (SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+                attributes.putIfAbsent(attribute.getName().toLowerCase(), attribute);
+            }
+            Set<String> tables = new TreeSet<>();
+            collectTables(entityType, mappingMetamodel, tables, new HashSet<>());
+            entries.putIfAbsent(entityType.getName().toLowerCase(), new Entry(entityType, Map.copyOf(attributes), Set.copyOf(tables)));
+        }
+        if (!"none".equals(entityNameFallbackPrefix)) {
+            String prefix = entityNameFallbackPrefix.toLowerCase();
+            for (Map.Entry<String, Entry> entry : Map.copyOf(entries).entrySet()) {
+                if (entry.getKey().startsWith(prefix) && entry.getKey().length() > prefix.length()) {
+                    entries.putIfAbsent(entry.getKey().substring(prefix.length()), entry.getValue());
+                }
+            }
+        }
+        this.entries = Map.copyOf(entries);
+        log.debug("Registered entities: {}", this.entries.keySet());
+    }
+
+    /**
+     * The tables a serialized entity can be read from: its own, those of its collections, and those of every entity reachable
+     * through its associations, as serializing a whole entity may follow any of them.
+     */
+    private static void collectTables(ManagedType<?> managedType, MappingMetamodel mappingMetamodel, Set<String> tables, Set<ManagedType<?>> visited) {
+        if (!visited.add(managedType)) {
+            return;
+        }
+        if (managedType instanceof EntityType<?> entityType && entityType.getJavaType() != null) {
+            EntityPersister persister = mappingMetamodel.getEntityDescriptor(entityType.getJavaType());
+            addTables(persister.getQuerySpaces(), tables);
+            mappingMetamodel.forEachCollectionDescriptor(collection -> {
+                if (collection.getOwnerEntityPersister().getMappedClass().isAssignableFrom(entityType.getJavaType())) {
+                    addTables(collection.getCollectionSpaces(), tables);
+                }
+            });
+        }
+        for (Attribute<?, ?> attribute : managedType.getAttributes()) {
+            Type<?> type = attribute instanceof PluralAttribute<?, ?, ?> plural ? plural.getElementType() : ((SingularAttribute<?, ?>) attribute).getType();
+            if (type instanceof ManagedType<?> target) {
+                collectTables(target, mappingMetamodel, tables, visited);
+            }
+        }
+    }
+
+    private static void addTables(Serializable[] spaces, Set<String> tables) {
+        for (Serializable space : spaces) {
+            tables.add(TableVersions.normalize(space.toString()));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when no entity is known under the name, with or without the fallback prefix
+     */
+    public Entry entry(String entityName) {
+        Entry entry = entityName != null ? entries.get(entityName.toLowerCase()) : null;
+        if (entry == null) {
+            throw new IllegalArgumentException("No entity type '%s' found".formatted(entityName));
+        }
+        return entry;
+    }
+
+    /**
+     * @param tables normalized names of the tables the entity is read from, see {@link TableVersions#normalize(String)}
+     */
+    public record Entry(EntityType<?> entityType, Map<String, SingularAttribute<?, ?>> attributes, Set<String> tables) {
+
+        public Class<?> javaType() {
+            return entityType.getJavaType();
+        }
+
+        /**
+         * Returns the singular attribute matching the name ignoring case, or null.
+         */
+        public SingularAttribute<?, ?> attribute(String name) {
+            return name != null ? attributes.get(name.toLowerCase()) : null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.springframework.lang.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load graphs built from the dotted paths of a projection, so that the associations a projection reads are fetched with the
+ * entities in one query instead of one query per row and association when they are serialized.
+ * Only singular associations are fetched this way, a fetched collection would multiply the rows and break limit and offset;
+ * collections are left to {@code hibernate.default_batch_fetch_size}.
+ */
+final class FetchGraphs {
+
+    static final String LOAD_GRAPH = "jakarta.persistence.loadgraph";
+
+    private FetchGraphs() {
+    }
+
+    /**
+     * @return the graph, or null when the projection reads no singular association
+     */
+    @Nullable
+    static EntityGraph<?> forProjection(EntityManager entityManager, EntityType<?> entityType, String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        EntityGraph<?> graph = null;
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+        for (String path : projection) {
+            if (path == null || path.indexOf('.') < 0) {
+                continue;
+            }
+            String[] segments = path.trim().split("\\.");
+            ManagedType<?> managedType = entityType;
+            Subgraph<?> parent = null;
+            StringBuilder prefix = new StringBuilder();
+            for (int i = 0; i < segments.length - 1; i++) {
+                Attribute<?, ?> attribute = findAttribute(managedType, segments[i]);
+                if (!(attribute instanceof SingularAttribute<?, ?> singular) || !attribute.isAssociation()
+                        || !(singular.getType() instanceof ManagedType<?> target)) {
+                    break;
+                }
+                if (graph == null) {
+                    graph = entityManager.createEntityGraph(entityType.getJavaType());
+                }
+                prefix.append(attribute.getName()).append('.');
+                EntityGraph<?> root = graph;
+                Subgraph<?> owner = parent;
+                parent = subgraphs.computeIfAbsent(prefix.toString(), key -> owner != null ? owner.addSubgraph(attribute.getName()) : root.addSubgraph(attribute.getName()));
+                managedType = target;
+            }
+        }
+        return graph;
+    }
+
+    private static Attribute<?, ?> findAttribute(ManagedType<?> managedType, String name) {
+        for (Attribute<?, ?> attribute : managedType.getAttributes()) {
+            if (attribute.getName().equalsIgnoreCase(name)) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+}
@@ -1,16 +1,33 @@
 package com.fluidnotions.genericjpacriteriarest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import io.swagger.v3.oas.models.OpenAPI;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import org.springdoc.core.models.GroupedOpenApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
 
 
 @Configuration
@@ -24,10 +41,14 @@ public class GenericJpaCriteriaRestAutoConfiguration {
         return jacksonBuilder.build();
     }
 
+    /**
+     * A thread-safe proxy that delegates to the EntityManager of the current transaction (or request, with open-in-view),
+     * so concurrent requests never share a persistence context and every context is released with its transaction.
+     */
     @Bean
     @ConditionalOnMissingBean(value = EntityManager.class)
     public EntityManager entityManager(EntityManagerFactory entityManagerFactory) {
-        return entityManagerFactory.createEntityManager();
+        return SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
     }
 
     @Bean
@@ -38,23 +59,238 @@ public class GenericJpaCriteriaRestAutoConfiguration {
     }
 
     @Bean
-    public JpaCriteriaSearchService jpaCriteriaSearchService(EntityManager entityManager, Jackson2ObjectMapperBuilder jacksonBuilder) {
-        return new JpaCriteriaSearchService(entityManager, jacksonBuilder);
+    public SearchResultSerializer searchResultSerializer(Jackson2ObjectMapperBuilder jacksonBuilder, @Value("${rest-jpa-criteria-search.serializer.writer-cache-size:256}") int writerCacheSize,
+                                                         @Value("${rest-jpa-criteria-search.serializer.lazy-associations:id}") String lazyAssociations) {
+        return new SearchResultSerializer(jacksonBuilder, writerCacheSize, LazyAssociationSerializerModifier.Mode.valueOf(lazyAssociations.toUpperCase()));
+    }
+
+    @Bean
+    public SearchPaging searchPaging(SearchResultSerializer searchResultSerializer, @Value("${rest-jpa-criteria-search.page.default-size:0}") int defaultSize, @Value("${rest-jpa-criteria-search.page.max-size:0}") int maxSize) {
+        return new SearchPaging(searchResultSerializer.objectMapper(), defaultSize, maxSize);
+    }
+
+    @Bean
+    public EntityRegistry entityRegistry(EntityManagerFactory entityManagerFactory, @Value("${rest-jpa-criteria-search.entity-name-fallback-prefix:none}") String entityNameFallbackPrefix) {
+        return new EntityRegistry(entityManagerFactory, entityNameFallbackPrefix);
+    }
+
+    @Bean
+    public QueryPlanCache queryPlanCache(@Value("${rest-jpa-criteria-search.query-plan-cache.size:512}") int size) {
+        return new QueryPlanCache(size);
+    }
+
+    /**
+     * Settings of the whole persistence unit, the application's queries included, so each is only applied when asked for, and unless
+     * the application configures it itself: {@code in.parameter-padding} pads the {@code in} lists to powers of two, so lists of different
+     * lengths share SQL and prepared statements, {@code fetch.batch-size} loads lazy associations and collections of that many entities in one query,
+     * and {@code slow-query.capture-sql} registers the {@link SqlCapture} statement inspector for the slow query log.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer criteriaRestHibernateCustomizer(@Value("${rest-jpa-criteria-search.in.parameter-padding:false}") boolean inParameterPadding,
+                                                                         @Value("${rest-jpa-criteria-search.fetch.batch-size:0}") int batchFetchSize,
+                                                                         @Value("${rest-jpa-criteria-search.slow-query.capture-sql:false}") boolean captureSql) {
+        return properties -> {
+            if (inParameterPadding) {
+                properties.putIfAbsent("hibernate.query.in_clause_parameter_padding", "true");
+            }
+            if (batchFetchSize > 0) {
+                properties.putIfAbsent("hibernate.default_batch_fetch_size", String.valueOf(batchFetchSize));
+            }
+            if (captureSql) {
+                properties.putIfAbsent("hibernate.session_factory.statement_inspector", new SqlCapture());
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(CriteriaRestMetrics.class)
+    public CriteriaRestMetrics criteriaRestMetrics() {
+        return CriteriaRestMetrics.NOOP;
+    }
+
+    /**
+     * Search and patch meters in the application's {@link MeterRegistry}, when Micrometer is on the classpath.
+     */
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class MicrometerMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(CriteriaRestMetrics.class)
+        public CriteriaRestMetrics micrometerCriteriaRestMetrics(ObjectProvider<MeterRegistry> meterRegistry, @Value("${rest-jpa-criteria-search.metrics.shape-tag:true}") boolean shapeTag) {
+            MeterRegistry registry = meterRegistry.getIfUnique();
+            return registry != null ? new MicrometerCriteriaRestMetrics(registry, shapeTag) : CriteriaRestMetrics.NOOP;
+        }
+
+        @Bean
+        public MeterBinder criteriaRestCacheMeters(QueryPlanCache queryPlanCache, UpdateStatements updateStatements, JpaCriteriaSearchService jpaCriteriaSearchService, SearchGuard searchGuard,
+                                                   ObjectProvider<LocalSearchResultCache> searchResultCache, ObjectProvider<WriteBehindPatchQueue> writeBehindPatchQueue,
+                                                   ObjectProvider<AsyncExecutor> asyncExecutors) {
+            return MicrometerCriteriaRestMetrics.cacheMeters(queryPlanCache, updateStatements, jpaCriteriaSearchService, searchGuard,
+                    searchResultCache.getIfAvailable(), writeBehindPatchQueue.getIfAvailable(), asyncExecutors.orderedStream().toList());
+        }
+    }
+
+    @Bean
+    public TableVersions tableVersions() {
+        return new TableVersions();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(SearchResultCache.class)
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.result-cache.enabled", havingValue = "true")
+    public LocalSearchResultCache searchResultCache(Environment environment,
+                                                    @Value("${rest-jpa-criteria-search.result-cache.max-size:64MB}") DataSize maxSize,
+                                                    @Value("${rest-jpa-criteria-search.result-cache.ttl:60s}") Duration ttl) {
+        Map<String, Duration> entityTtls = Binder.get(environment)
+                .bind("rest-jpa-criteria-search.result-cache.entity-ttl", Bindable.mapOf(String.class, Duration.class))
+                .orElse(Map.of());
+        return new LocalSearchResultCache(maxSize.toBytes(), ttl, entityTtls);
+    }
+
+    @Bean
+    public AggregationWhitelist aggregationWhitelist(Environment environment, EntityRegistry entityRegistry) {
+        Map<String, String[]> attributes = Binder.get(environment)
+                .bind("rest-jpa-criteria-search.aggregate.attributes", Bindable.mapOf(String.class, String[].class))
+                .orElse(Map.of());
+        return new AggregationWhitelist(entityRegistry, attributes);
+    }
+
+    @Bean
+    public MatchModes matchModes(Environment environment, EntityRegistry entityRegistry, ObjectProvider<MatchHook> matchHooks,
+                                 @Value("${rest-jpa-criteria-search.like.default-mode:containsIgnoreCase}") String defaultMode) {
+        Map<String, String> attributeModes = Binder.get(environment)
+                .bind("rest-jpa-criteria-search.like.mode", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+        return new MatchModes(entityRegistry, Dto.MatchMode.of(defaultMode), attributeModes, matchHooks.orderedStream().toList());
+    }
+
+    @Bean
+    public SearchGuard searchGuard(Environment environment, EntityRegistry entityRegistry,
+                                   @Value("${rest-jpa-criteria-search.guard.truncate:false}") boolean truncate,
+                                   @Value("${rest-jpa-criteria-search.guard.queue-timeout:1s}") Duration queueTimeout) {
+        Binder binder = Binder.get(environment);
+        SearchGuard.Limits defaultLimits = binder.bind("rest-jpa-criteria-search.guard.default", SearchGuard.Limits.class)
+                .orElse(new SearchGuard.Limits(null, null, null));
+        Map<String, SearchGuard.Limits> entityLimits = binder.bind("rest-jpa-criteria-search.guard.entity", Bindable.mapOf(String.class, SearchGuard.Limits.class))
+                .orElse(Map.of());
+        return new SearchGuard(entityRegistry, defaultLimits, entityLimits, truncate, queueTimeout);
+    }
+
+    @Bean
+    public JpaCriteriaSearchService jpaCriteriaSearchService(EntityManager entityManager, PlatformTransactionManager transactionManager, SearchResultSerializer searchResultSerializer, SearchPaging searchPaging,
+                                                             EntityRegistry entityRegistry, QueryPlanCache queryPlanCache, TableVersions tableVersions, AggregationWhitelist aggregationWhitelist,
+                                                             MatchModes matchModes, SearchGuard searchGuard, CriteriaRestMetrics criteriaRestMetrics, ObjectProvider<SearchResultCache> searchResultCache,
+                                                             ObjectProvider<IndexAdvisor> indexAdvisor) {
+        return new JpaCriteriaSearchService(entityManager, transactionManager, searchResultSerializer, searchPaging, entityRegistry, queryPlanCache, tableVersions, aggregationWhitelist, matchModes, searchGuard, criteriaRestMetrics,
+                searchResultCache.getIfAvailable(), indexAdvisor.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.index-advisor.enabled", havingValue = "true")
+    public IndexAdvisor indexAdvisor(DataSource dataSource, EntityManagerFactory entityManagerFactory, MatchModes matchModes,
+                                     @Value("${rest-jpa-criteria-search.index-advisor.max-candidates:1000}") int maxCandidates) {
+        return new IndexAdvisor(dataSource, entityManagerFactory, matchModes, maxCandidates);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.index-advisor.enabled", havingValue = "true")
+    public IndexAdvisorController indexAdvisorController(IndexAdvisor indexAdvisor) {
+        return new IndexAdvisorController(indexAdvisor);
+    }
+
+    @Bean
+    public UpdateStatements updateStatements(@Value("${rest-jpa-criteria-search.patch.statement-cache-size:256}") int cacheSize) {
+        return new UpdateStatements(cacheSize);
+    }
+
+    @Bean
+    public TableColumns tableColumns(DataSource dataSource) {
+        return new TableColumns(dataSource);
+    }
+
+    @Bean
+    public JpaPatchService jpaPatchService(EntityManager entityManager, ObjectProvider<TableChangeListener> tableChangeListeners, PlatformTransactionManager transactionManager, UpdateStatements updateStatements,
+                                           TableColumns tableColumns, CriteriaRestMetrics criteriaRestMetrics) {
+        return new JpaPatchService(entityManager, tableChangeListeners.orderedStream().toList(), transactionManager, updateStatements, tableColumns, criteriaRestMetrics);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.write-behind.enabled", havingValue = "true")
+    public WriteBehindPatchQueue writeBehindPatchQueue(JpaPatchService jpaPatchService, UpdateStatements updateStatements, TableColumns tableColumns,
+                                                       @Value("${rest-jpa-criteria-search.write-behind.stripes:16}") int stripes,
+                                                       @Value("${rest-jpa-criteria-search.write-behind.max-pending-rows:100000}") int maxPendingRows,
+                                                       @Value("${rest-jpa-criteria-search.write-behind.flush-size:1000}") int flushSize,
+                                                       @Value("${rest-jpa-criteria-search.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                                       @Value("${rest-jpa-criteria-search.write-behind.offer-timeout:1s}") Duration offerTimeout) {
+        return new WriteBehindPatchQueue(jpaPatchService, updateStatements, tableColumns, stripes, maxPendingRows, flushSize, flushInterval, offerTimeout);
+    }
+
+    /**
+     * Searches and patches each run on a bounded pool of their own, so slow ones never take all the servlet threads, nor each other's.
+     * The asynchronous controllers replace the synchronous ones, which answer on the request thread without an async dispatch.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.async.enabled", havingValue = "true")
+    static class AsyncExecutionConfiguration {
+
+        @Bean
+        public AsyncExecutor searchAsyncExecutor(@Value("${rest-jpa-criteria-search.async.search.max-concurrency:32}") int maxConcurrency,
+                                                 @Value("${rest-jpa-criteria-search.async.search.queue-capacity:256}") int queueCapacity,
+                                                 @Value("${rest-jpa-criteria-search.async.search.timeout:30s}") Duration timeout,
+                                                 @Value("${rest-jpa-criteria-search.async.virtual-threads:true}") boolean virtualThreads) {
+            return new AsyncExecutor("search", maxConcurrency, queueCapacity, timeout, virtualThreads);
+        }
+
+        @Bean
+        public AsyncExecutor patchAsyncExecutor(@Value("${rest-jpa-criteria-search.async.patch.max-concurrency:8}") int maxConcurrency,
+                                                @Value("${rest-jpa-criteria-search.async.patch.queue-capacity:256}") int queueCapacity,
+                                                @Value("${rest-jpa-criteria-search.async.patch.timeout:30s}") Duration timeout,
+                                                @Value("${rest-jpa-criteria-search.async.virtual-threads:true}") boolean virtualThreads) {
+            return new AsyncExecutor("patch", maxConcurrency, queueCapacity, timeout, virtualThreads);
+        }
+
+        @Bean
+        public AsyncJpaCriteriaSearchController asyncJpaCriteriaSearchController(JpaCriteriaSearchService jpaCriteriaSearchService, BatchSearchService batchSearchService,
+                                                                                 ObjectProvider<ResponseCompression> responseCompression,
+                                                                                 @Qualifier("searchAsyncExecutor") AsyncExecutor searchAsyncExecutor) {
+            return new AsyncJpaCriteriaSearchController(jpaCriteriaSearchService, batchSearchService, responseCompression.getIfAvailable(), searchAsyncExecutor);
+        }
+
+        @Bean
+        public AsyncJpaPatchController asyncJpaPatchController(JpaPatchService jpaPatchService, ObjectProvider<WriteBehindPatchQueue> writeBehindPatchQueue,
+                                                               @Qualifier("patchAsyncExecutor") AsyncExecutor patchAsyncExecutor) {
+            return new AsyncJpaPatchController(jpaPatchService, writeBehindPatchQueue.getIfAvailable(), patchAsyncExecutor);
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.async.enabled", havingValue = "false", matchIfMissing = true)
+    public JpaPatchController jpaPatchController(JpaPatchService jpaPatchService, ObjectProvider<WriteBehindPatchQueue> writeBehindPatchQueue) {
+        return new JpaPatchController(jpaPatchService, writeBehindPatchQueue.getIfAvailable());
     }
 
     @Bean
-    public JpaPatchService jpaPatchService(EntityManager entityManager) {
-        return new JpaPatchService(entityManager);
+    public BatchSearchService batchSearchService(JpaCriteriaSearchService jpaCriteriaSearchService, SearchResultSerializer searchResultSerializer,
+                                                 @Value("${rest-jpa-criteria-search.batch.max-concurrency:8}") int maxConcurrency,
+                                                 @Value("${rest-jpa-criteria-search.batch.queue-capacity:256}") int queueCapacity,
+                                                 @Value("${rest-jpa-criteria-search.batch.timeout:30s}") Duration timeout,
+                                                 @Value("${rest-jpa-criteria-search.batch.virtual-threads:true}") boolean virtualThreads) {
+        return new BatchSearchService(jpaCriteriaSearchService, searchResultSerializer.objectMapper(), maxConcurrency, queueCapacity, timeout, virtualThreads);
     }
 
     @Bean
-    public JpaPatchController jpaPatchController(JpaPatchService jpaPatchService) {
-        return new JpaPatchController(jpaPatchService);
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.compression.enabled", havingValue = "true")
+    public ResponseCompression responseCompression(@Value("${rest-jpa-criteria-search.compression.min-size:8KB}") DataSize minSize,
+                                                   @Value("${rest-jpa-criteria-search.compression.zstd-level:3}") int zstdLevel) {
+        return new ResponseCompression(minSize.toBytes(), zstdLevel);
     }
 
     @Bean
-    public JpaCriteriaSearchController jpaCriteriaSearchController(JpaCriteriaSearchService jpaCriteriaSearchService) {
-        return new JpaCriteriaSearchController(jpaCriteriaSearchService);
+    @ConditionalOnProperty(name = "rest-jpa-criteria-search.async.enabled", havingValue = "false", matchIfMissing = true)
+    public JpaCriteriaSearchController jpaCriteriaSearchController(JpaCriteriaSearchService jpaCriteriaSearchService, BatchSearchService batchSearchService,
+                                                                   ObjectProvider<ResponseCompression> responseCompression) {
+        return new JpaCriteriaSearchController(jpaCriteriaSearchService, batchSearchService, responseCompression.getIfAvailable());
     }
 
     @Bean
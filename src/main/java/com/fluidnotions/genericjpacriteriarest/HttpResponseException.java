@@ -16,5 +16,9 @@ public class HttpResponseException extends Exception {
     public String getMessage() {
         return message;
     }
+
+    public HttpStatus getHttpStatus() {
+        return httpStatus;
+    }
 }
 
@@ -0,0 +1,325 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.MappingMetamodel;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.lang.Nullable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index candidates from the search traffic. Each search records, per entity, every operator it used on an attribute with the time
+ * its query took, and the columns an index could serve: those compared for equality ({@code equalsLong}, {@code equalsString}, {@code in},
+ * {@code isNull}, {@code like} matching exactly) followed by one compared by range ({@code between}, the comparisons, {@code like} matching a prefix).
+ * {@code like} ignoring case needs an index on {@code lower(column)}; containing matches, negations and {@link MatchHook}s cannot use one.
+ * <p>
+ * Counters are {@link LongAdder}s in concurrent maps, so recording takes no lock. The report reads the indexes of the tables from the JDBC
+ * {@link DatabaseMetaData} and leaves out the candidates an existing index serves, that is one starting with the equality columns, in any order,
+ * followed by the range column.
+ */
+@Slf4j
+public class IndexAdvisor {
+
+    private final DataSource dataSource;
+    private final MappingMetamodel mappingMetamodel;
+    private final MatchModes matchModes;
+    private final int maxCandidates;
+    private final Map<PredicateKey, Usage> predicates = new ConcurrentHashMap<>();
+    private final Map<CandidateKey, Usage> candidates = new ConcurrentHashMap<>();
+    private final Map<AttributeKey, Optional<Column>> columns = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxCandidates distinct sets of columns recorded, later ones are not
+     */
+    IndexAdvisor(DataSource dataSource, EntityManagerFactory entityManagerFactory, MatchModes matchModes, int maxCandidates) {
+        this.dataSource = dataSource;
+        this.mappingMetamodel = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getRuntimeMetamodels().getMappingMetamodel();
+        this.matchModes = matchModes;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Records the where criteria of a query of the entity that took the given time; criteria on names that are not attributes are left out, as the search ignores them.
+     */
+    void record(EntityRegistry.Entry entry, @Nullable Dto.Where where, long nanos) {
+        if (where == null) {
+            return;
+        }
+        Map<String, ColumnSet> columnSets = new TreeMap<>();
+        if (where.like() != null) {
+            Map<String, Dto.MatchMode> requestedModes = new HashMap<>();
+            if (where.likeMode() != null) {
+                where.likeMode().forEach((fieldName, mode) -> requestedModes.put(fieldName.toLowerCase(), mode));
+            }
+            for (String fieldName : where.like().keySet()) {
+                SingularAttribute<?, ?> attribute = entry.attribute(fieldName);
+                if (attribute != null) {
+                    MatchModes.Match match = matchModes.match(entry, attribute, requestedModes.get(fieldName.toLowerCase()));
+                    Access access = match.hook() != null ? Access.NONE : switch (match.mode()) {
+                        case EXACT, EXACT_IGNORE_CASE -> Access.EQUALITY;
+                        case STARTS_WITH, STARTS_WITH_IGNORE_CASE -> Access.RANGE;
+                        default -> Access.NONE;
+                    };
+                    boolean lower = match.mode() == Dto.MatchMode.EXACT_IGNORE_CASE || match.mode() == Dto.MatchMode.STARTS_WITH_IGNORE_CASE;
+                    record(entry, attribute, "like(" + match.shape() + ")", access, lower, columnSets, nanos);
+                }
+            }
+        }
+        record(entry, "equalsLong", Access.EQUALITY, where.equalsLong(), columnSets, nanos);
+        record(entry, "notEqualsLong", Access.NONE, where.notEqualsLong(), columnSets, nanos);
+        record(entry, "equalsString", Access.EQUALITY, where.equalsString(), columnSets, nanos);
+        record(entry, "isNull", Access.EQUALITY, where.isNull(), columnSets, nanos);
+        record(entry, "isNotNull", Access.NONE, where.isNotNull(), columnSets, nanos);
+        record(entry, "in", Access.EQUALITY, where.in(), columnSets, nanos);
+        record(entry, "between", Access.RANGE, where.between(), columnSets, nanos);
+        record(entry, "gt", Access.RANGE, where.gt(), columnSets, nanos);
+        record(entry, "gte", Access.RANGE, where.gte(), columnSets, nanos);
+        record(entry, "lt", Access.RANGE, where.lt(), columnSets, nanos);
+        record(entry, "lte", Access.RANGE, where.lte(), columnSets, nanos);
+        columnSets.forEach((table, columnSet) -> {
+            String range = columnSet.range != null && columnSet.equality.contains(columnSet.range) ? null : columnSet.range;
+            CandidateKey key = new CandidateKey(entry.entityType().getName(), table, Set.copyOf(columnSet.equality), range);
+            Usage usage = candidates.get(key);
+            if (usage == null && candidates.size() < maxCandidates) {
+                usage = candidates.computeIfAbsent(key, k -> new Usage());
+            }
+            if (usage != null) {
+                usage.add(nanos);
+            }
+        });
+    }
+
+    private void record(EntityRegistry.Entry entry, String operator, Access access, @Nullable Object fieldNames, Map<String, ColumnSet> columnSets, long nanos) {
+        if (fieldNames == null) {
+            return;
+        }
+        Collection<?> names = fieldNames instanceof Map<?, ?> values ? values.keySet() : (Collection<?>) fieldNames;
+        for (Object fieldName : names) {
+            SingularAttribute<?, ?> attribute = entry.attribute((String) fieldName);
+            if (attribute != null) {
+                record(entry, attribute, operator, access, false, columnSets, nanos);
+            }
+        }
+    }
+
+    private void record(EntityRegistry.Entry entry, SingularAttribute<?, ?> attribute, String operator, Access access, boolean lower, Map<String, ColumnSet> columnSets, long nanos) {
+        Optional<Column> column = columns.computeIfAbsent(new AttributeKey(entry.javaType(), attribute.getName(), attribute.isId()), this::column);
+        boolean indexable = access != Access.NONE && column.isPresent();
+        predicates.computeIfAbsent(new PredicateKey(entry.entityType().getName(), attribute.getName(), operator, indexable), k -> new Usage()).add(nanos);
+        if (indexable) {
+            String columnName = lower ? "lower(" + column.get().name() + ")" : column.get().name();
+            ColumnSet columnSet = columnSets.computeIfAbsent(column.get().table(), table -> new ColumnSet());
+            if (access == Access.EQUALITY) {
+                columnSet.equality.add(columnName);
+            } else if (columnSet.range == null || columnName.compareTo(columnSet.range) < 0) {
+                // only one range column can follow the equality columns of an index
+                columnSet.range = columnName;
+            }
+        }
+    }
+
+    /**
+     * The single column of the attribute and the table it is in, empty for embedded and unmapped attributes.
+     */
+    private Optional<Column> column(AttributeKey attribute) {
+        try {
+            EntityPersister persister = mappingMetamodel.getEntityDescriptor(attribute.entityClass());
+            if (!(persister instanceof AbstractEntityPersister entityPersister)) {
+                return Optional.empty();
+            }
+            String[] columnNames = attribute.id() ? entityPersister.getIdentifierColumnNames() : entityPersister.getPropertyColumnNames(attribute.name());
+            String table = attribute.id() ? entityPersister.getTableName() : entityPersister.getPropertyTableName(attribute.name());
+            return columnNames.length == 1 && table != null ? Optional.of(new Column(table, columnNames[0])) : Optional.empty();
+        } catch (RuntimeException e) {
+            log.debug("No column for {}", attribute, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Candidates and predicate usage recorded since the start or the last {@link #reset()}.
+     *
+     * @throws IllegalStateException when the indexes of a table cannot be read
+     */
+    public Dto.IndexReport report() {
+        Map<String, Map<String, List<String>>> indexesByTable = new HashMap<>();
+        Map<String, Map<String, Long>> columnSearches = new HashMap<>();
+        candidates.forEach((key, usage) -> {
+            Map<String, Long> searches = columnSearches.computeIfAbsent(key.table(), table -> new HashMap<>());
+            key.equality().forEach(column -> searches.merge(column, usage.count(), Long::sum));
+        });
+        List<Dto.IndexCandidate> report = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (Map.Entry<CandidateKey, Usage> candidate : candidates.entrySet()) {
+                CandidateKey key = candidate.getKey();
+                Map<String, List<String>> indexes = indexesByTable.get(key.table());
+                if (indexes == null) {
+                    indexes = indexes(metaData, key.table());
+                    indexesByTable.put(key.table(), indexes);
+                }
+                Dto.IndexCandidate indexCandidate = candidate(key, candidate.getValue(), indexes, columnSearches.get(key.table()));
+                if (indexCandidate != null) {
+                    report.add(indexCandidate);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read the indexes: " + e.getMessage(), e);
+        }
+        report.sort(Comparator.comparingDouble(Dto.IndexCandidate::estimatedSavedMillis).reversed());
+        List<Dto.PredicateUsage> predicateUsage = new ArrayList<>();
+        predicates.forEach((key, usage) -> predicateUsage.add(Dto.PredicateUsage.builder().entity(key.entity()).attribute(key.attribute()).operator(key.operator())
+                .indexable(key.indexable()).searches(usage.count()).totalMillis(usage.millis()).averageMillis(usage.averageMillis()).build()));
+        predicateUsage.sort(Comparator.comparingDouble(Dto.PredicateUsage::totalMillis).reversed());
+        return Dto.IndexReport.builder().candidates(report).predicates(predicateUsage).build();
+    }
+
+    /**
+     * @return null when an existing index serves the columns
+     */
+    @Nullable
+    private static Dto.IndexCandidate candidate(CandidateKey key, Usage usage, Map<String, List<String>> indexes, Map<String, Long> columnSearches) {
+        Set<String> equality = new TreeSet<>();
+        key.equality().forEach(column -> equality.add(normalize(column)));
+        String range = key.range() != null ? normalize(key.range()) : null;
+        String partialIndex = null;
+        for (Map.Entry<String, List<String>> index : indexes.entrySet()) {
+            List<String> indexColumns = index.getValue();
+            int prefix = equality.size();
+            if (indexColumns.size() >= prefix + (range != null ? 1 : 0) && Set.copyOf(indexColumns.subList(0, prefix)).equals(equality)
+                    && (range == null || indexColumns.get(prefix).equals(range))) {
+                return null;
+            }
+            if (partialIndex == null && (equality.contains(indexColumns.get(0)) || indexColumns.get(0).equals(range))) {
+                partialIndex = index.getKey();
+            }
+        }
+        List<String> columns = new ArrayList<>(key.equality());
+        columns.sort(Comparator.<String>comparingLong(column -> columnSearches.getOrDefault(column, 0L)).reversed().thenComparing(Comparator.naturalOrder()));
+        if (key.range() != null) {
+            columns.add(key.range());
+        }
+        double millis = usage.millis();
+        String indexName = ("ix_" + key.table() + "_" + String.join("_", columns)).replaceAll("[^A-Za-z0-9_]+", "_").replaceAll("_+", "_");
+        return Dto.IndexCandidate.builder().entity(key.entity()).table(key.table()).columns(columns)
+                .searches(usage.count()).totalMillis(millis).averageMillis(usage.averageMillis())
+                .partialIndex(partialIndex).estimatedSavedMillis(partialIndex != null ? millis / 2 : millis)
+                .ddl("create index %s on %s (%s)".formatted(indexName.substring(0, Math.min(indexName.length(), 60)), key.table(), String.join(", ", columns)))
+                .build();
+    }
+
+    /**
+     * The indexes of the table by name, with their normalized columns in index order.
+     */
+    private static Map<String, List<String>> indexes(DatabaseMetaData metaData, String qualifiedTable) throws SQLException {
+        int dot = qualifiedTable.lastIndexOf('.');
+        String schema = dot < 0 ? null : identifier(metaData, qualifiedTable.substring(0, dot));
+        String table = identifier(metaData, qualifiedTable.substring(dot + 1));
+        Map<String, Map<Short, String>> columnsByIndex = new LinkedHashMap<>();
+        try (ResultSet indexInfo = metaData.getIndexInfo(null, schema, table, false, true)) {
+            while (indexInfo.next()) {
+                String indexName = indexInfo.getString("INDEX_NAME");
+                String columnName = indexInfo.getString("COLUMN_NAME");
+                if (indexName != null && columnName != null && indexInfo.getShort("TYPE") != DatabaseMetaData.tableIndexStatistic) {
+                    columnsByIndex.computeIfAbsent(indexName, name -> new TreeMap<>()).put(indexInfo.getShort("ORDINAL_POSITION"), normalize(columnName));
+                }
+            }
+        }
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        columnsByIndex.forEach((indexName, columns) -> indexes.put(indexName, List.copyOf(columns.values())));
+        return indexes;
+    }
+
+    private static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+        String unquoted = name.replace("\"", "").replace("`", "").replace("[", "").replace("]", "");
+        if (!unquoted.equals(name)) {
+            return unquoted;
+        }
+        if (metaData.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase();
+        }
+        return metaData.storesLowerCaseIdentifiers() ? name.toLowerCase() : name;
+    }
+
+    /**
+     * Column names and index expressions compared without case, quotes, casts and parentheses, so that {@code lower(name)}
+     * matches an expression index reported as {@code lower((name)::text)}.
+     */
+    private static String normalize(String column) {
+        return column.toLowerCase().replace("::text", "").replaceAll("[\"`\\[\\]()\\s]", "");
+    }
+
+    /**
+     * Forgets what was recorded, e.g. once an index has been created.
+     */
+    public void reset() {
+        predicates.clear();
+        candidates.clear();
+    }
+
+    private enum Access {
+        EQUALITY, RANGE, NONE
+    }
+
+    private record AttributeKey(Class<?> entityClass, String name, boolean id) {
+    }
+
+    private record Column(String table, String name) {
+    }
+
+    private static class ColumnSet {
+        private final Set<String> equality = new TreeSet<>();
+        private String range;
+    }
+
+    private record PredicateKey(String entity, String attribute, String operator, boolean indexable) {
+    }
+
+    private record CandidateKey(String entity, String table, Set<String> equality, @Nullable String range) {
+    }
+
+    private static class Usage {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void add(long elapsed) {
+            count.increment();
+            nanos.add(elapsed);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double millis() {
+            return (double) nanos.sum() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        double averageMillis() {
+            long count = count();
+            return count == 0 ? 0 : millis() / count;
+        }
+    }
+}
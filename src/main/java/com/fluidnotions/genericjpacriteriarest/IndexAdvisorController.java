@@ -0,0 +1,38 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("${rest-jpa-criteria-search.controller-path-prefix:/}")
+public class IndexAdvisorController {
+
+    private final IndexAdvisor indexAdvisor;
+
+    @Operation(summary = "index candidates from the search traffic", description = "sets of columns searches filter on that no index of their table serves, ranked by the time spent in those searches, with the usage of every operator per attribute", tags = {"3. generic-jpa-criteria-rest"})
+    @GetMapping(value = "/advisor/indexes", produces = "application/json")
+    public Dto.IndexReport indexes() throws HttpResponseException {
+        try {
+            return indexAdvisor.report();
+        } catch (IllegalStateException e) {
+            throw new HttpResponseException(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Operation(summary = "forget the recorded search traffic", description = "e.g. once an index has been created", tags = {"3. generic-jpa-criteria-rest"})
+    @DeleteMapping("/advisor/indexes")
+    public ResponseEntity<Void> reset() {
+        indexAdvisor.reset();
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(HttpResponseException.class)
+    public ResponseEntity<String> handleHttpResponseException(HttpResponseException e) {
+        return ResponseEntity.status(e.getHttpStatus()).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+}
@@ -1,9 +1,9 @@
 package com.fluidnotions.genericjpacriteriarest;
 
 import io.swagger.v3.oas.annotations.Operation;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 
@@ -11,27 +11,33 @@ import org.springframework.web.bind.annotation.*;
 @RestController
 @RequestMapping("${rest-jpa-criteria-search.controller-path-prefix:/}")
 @SuppressWarnings("unchecked")
-public class JpaCriteriaSearchController {
+public class JpaCriteriaSearchController extends AbstractJpaCriteriaSearchController {
 
-    private final JpaCriteriaSearchService jpaCriteriaSearchService;
+    public JpaCriteriaSearchController(@Nullable JpaCriteriaSearchService jpaCriteriaSearchService, @Nullable BatchSearchService batchSearchService) {
+        this(jpaCriteriaSearchService, batchSearchService, null);
+    }
 
-    public JpaCriteriaSearchController(@Nullable JpaCriteriaSearchService jpaCriteriaSearchService) {
-        this.jpaCriteriaSearchService = jpaCriteriaSearchService;
+    public JpaCriteriaSearchController(@Nullable JpaCriteriaSearchService jpaCriteriaSearchService, @Nullable BatchSearchService batchSearchService, @Nullable ResponseCompression responseCompression) {
+        super(jpaCriteriaSearchService, batchSearchService, responseCompression);
     }
 
-    @Operation(summary = "criteria search on any entity", description = "matches on like string ignoring case, numbers equal, projection list", tags = {"1. generic-jpa-criteria-rest"})
-    @PostMapping(value = "/search/{entity}", produces = "application/json", consumes = "application/json")
-    public String search(@PathVariable(name = "entity") String entityName, @RequestBody Dto.Search search) throws HttpResponseException {
+    @Operation(summary = "criteria search on any entity", description = "matches on like string ignoring case, numbers equal, projection list; JSON, or Smile or CBOR by the Accept header; with etag.enabled answers If-None-Match with 304 while the entity's tables are unchanged", tags = {"1. generic-jpa-criteria-rest"})
+    @PostMapping(value = "/search/{entity}", produces = {"application/json", "application/x-jackson-smile", "application/cbor"}, consumes = "application/json")
+    public ResponseEntity<byte[]> search(@PathVariable(name = "entity") String entityName,
+                                         @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+                                         @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                         @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                         @RequestBody Dto.Search search) throws HttpResponseException {
+        ResponseFormat format = responseFormat(accept);
+        String etag = etag(entityName, search, format);
+        ResponseEntity<byte[]> notModified = notModified(etag, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
         try {
-            assert jpaCriteriaSearchService != null;
-            return jpaCriteriaSearchService.searchAndSerialize(entityName, search);
+            return searchResponse(jpaCriteriaSearchService.searchAndSerialize(entityName, search, format), format, etag, acceptEncoding);
         } catch (Exception e) {
-            throw new HttpResponseException("Error occurred searching :\n" + e.getMessage(), HttpStatus.BAD_REQUEST);
+            throw httpResponseException("Error occurred searching :\n", e);
         }
     }
-
-
-
-
-
 }
@@ -1,31 +1,57 @@
 package com.fluidnotions.genericjpacriteriarest;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.*;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.persistence.CacheRetrieveMode;
 import jakarta.persistence.CacheStoreMode;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
 import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.FlushMode;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -35,272 +61,759 @@ import java.util.stream.Collectors;
 public class JpaCriteriaSearchService {
 
     private final EntityManager entityManager;
-    private final Jackson2ObjectMapperBuilder jacksonBuilder;
-    @Value("${rest-jpa-criteria-search.entity-name-fallback-prefix:none}")
-    private String entityNameFallbackPrefix;
+    private final PlatformTransactionManager transactionManager;
+    private final SearchResultSerializer searchResultSerializer;
+    private final SearchPaging searchPaging;
+    private final EntityRegistry entityRegistry;
+    private final QueryPlanCache queryPlanCache;
+    private final TableVersions tableVersions;
+    private final AggregationWhitelist aggregationWhitelist;
+    private final MatchModes matchModes;
+    private final SearchGuard searchGuard;
+    private final CriteriaRestMetrics metrics;
+    @Nullable
+    private final SearchResultCache searchResultCache;
+    @Nullable
+    private final IndexAdvisor indexAdvisor;
+    private final SingleFlight<SearchKey, byte[]> inFlightSearches = new SingleFlight<>();
+    @Value("${rest-jpa-criteria-search.sql-projection.enabled:true}")
+    private boolean sqlProjectionEnabled;
+    @Value("${rest-jpa-criteria-search.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+    @Value("${rest-jpa-criteria-search.streaming.fetch-size:500}")
+    private int streamingFetchSize;
+    @Value("${rest-jpa-criteria-search.streaming.clear-every:1000}")
+    private int streamingClearEvery;
+    @Value("${rest-jpa-criteria-search.in.chunk-size:1000}")
+    private int inChunkSize;
+    @Value("${rest-jpa-criteria-search.slow-query.threshold:0ms}")
+    private Duration slowQueryThreshold;
+    @Value("${rest-jpa-criteria-search.etag.enabled:false}")
+    private boolean etagEnabled;
+    private final String etagEpoch = Long.toHexString(new SecureRandom().nextLong());
 
-    private ObjectMapper objectMapper() {
+    /**
+     * Runs in a read-only transaction, or joins the caller's. Outside a caller transaction the returned entities are detached.
+     * The {@link SearchGuard} permit is taken before the transaction begins, so a search waiting for one holds no connection.
+     *
+     * @throws SearchRejectedException when a {@link SearchGuard} limit of the entity is exceeded
+     */
+    public Dto.SearchResult search(String entityName, Dto.Search search) {
+        EntityRegistry.Entry entry = entityRegistry.entry(entityName);
+        EntityType<?> entityType = entry.entityType();
+        var page = searchPaging.page(entry, search);
+        return searchGuard.limit(entry, () -> readOnlyTransaction().execute(status -> {
+            SearchTimer timer = new SearchTimer(metrics, entityType.getName());
+            return slowQueryLogged(timer, search, () -> {
+                List<Criterion> criteria = criteria(entry, search);
+                timer.shape(() -> metricsShape(criteria));
+                var rows = searchEntities(entry, entityManager, search, criteria, page, timer);
+                var truncated = searchGuard.truncated(entry, rows);
+                var results = searchGuard.cap(entry, rows);
+                timer.rows(results.size());
+                Long total = null;
+                if (page.count()) {
+                    total = countEntities(entry, entityManager, criteria);
+                    timer.lap("count");
+                }
+                return Dto.SearchResult.builder().results(results).entityType(entityType).nextCursor(page.nextCursor(results, null)).total(total).truncated(truncated ? true : null).build();
+            });
+        }));
+    }
+
+    /**
+     * The result as JSON, see {@link #searchAndSerialize(String, Dto.Search, ResponseFormat)}.
+     */
+    public String searchAndSerialize(String entityName, Dto.Search search) {
+        return new String(searchAndSerialize(entityName, search, ResponseFormat.JSON), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Identical searches running at the same time share one query and one serialized result, and with a {@link SearchResultCache}
+     * the result is looked up before a transaction is even started. Both are keyed by the version of the entity's tables taken before
+     * the search runs, so a result read before a concurrent patch committed is never served after it, and by the format.
+     * Neither applies within a caller's transaction, whose uncommitted changes must not be shared.
+     *
+     * @return the result written in the format
+     */
+    public byte[] searchAndSerialize(String entityName, Dto.Search search, ResponseFormat format) {
+        EntityRegistry.Entry entry = entityRegistry.entry(entityName);
+        if ((searchResultCache == null && !singleFlightEnabled) || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return searchGuard.limit(entry, () -> readOnlyTransaction().execute(status -> serialize(entry, search, format)));
+        }
+        String key = format.binary() ? format.name() + ":" + cacheKey(search) : cacheKey(search);
+        long tablesVersion = tableVersions.version(entry.tables());
+        String cacheEntityName = entry.entityType().getName();
+        if (searchResultCache != null) {
+            byte[] cached = searchResultCache.get(cacheEntityName, key, tablesVersion);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Supplier<byte[]> searchOnce = () -> {
+            byte[] result = searchGuard.limit(entry, () -> readOnlyTransaction().execute(status -> serialize(entry, search, format)));
+            if (searchResultCache != null) {
+                searchResultCache.put(cacheEntityName, key, tablesVersion, result);
+            }
+            return result;
+        };
+        return singleFlightEnabled ? inFlightSearches.execute(new SearchKey(cacheEntityName, key, tablesVersion), searchOnce) : searchOnce.get();
+    }
 
-        @JsonIgnoreProperties({"hibernateLazyInitializer"})
-        record HibernateMixin() {
+    /**
+     * A weak entity tag of the result of the search in the format, from the version of the entity's tables, without running the search.
+     * It changes with every write through this library to one of the tables, and on restart, as the versions are kept in memory;
+     * writes made outside this library do not change it.
+     *
+     * @return the tag, or null when {@code etag.enabled} is off or within a caller's transaction
+     */
+    @Nullable
+    public String etag(String entityName, Dto.Search search, ResponseFormat format) {
+        if (!etagEnabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
         }
+        EntityRegistry.Entry entry = entityRegistry.entry(entityName);
+        long tablesVersion = tableVersions.version(entry.tables());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((entry.entityType().getName() + "\n" + format.name() + "\n" + cacheKey(search)).getBytes(StandardCharsets.UTF_8));
+            String searchHash = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), 12));
+            return "W/\"%s-%s-%x\"".formatted(etagEpoch, searchHash, tablesVersion);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        jacksonBuilder.mixIn(Object.class, HibernateMixin.class);
-        ObjectMapper objectMapper = jacksonBuilder.build();
-        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        return objectMapper;
+    /**
+     * Number of searches answered with the result of an identical search that was already running.
+     */
+    public long coalescedSearches() {
+        return inFlightSearches.coalesced();
     }
 
-    public Dto.SearchResult search(String entityName, Dto.Search search) {
-        var entities = entityManager.getMetamodel().getEntities();
-        var entityNames = entities.stream().map(e -> e.getName().toLowerCase()).collect(Collectors.joining(", "));
-        log.debug("Target entity: {}, All entities: {}", entityName, entityNames);
-        EntityType<?> entityType = getEntityType(entityName, entities);
-
-        if (entityType != null) {
-            log.debug("Entity: {}", entityType);
-            var results = searchEntities(entityType.getJavaType(), entityManager, search);
-            return Dto.SearchResult.builder().results(results).entityType(entityType).build();
-        }else if (!entityNameFallbackPrefix.equals("none")) {
-            entityType = getEntityType(entityNameFallbackPrefix + entityName, entities);
-            if (entityType != null) {
-                log.debug("Entity: {}", entityType);
-                var results = searchEntities(entityType.getJavaType(), entityManager, search);
-                return Dto.SearchResult.builder().results(results).entityType(entityType).build();
+    private byte[] serialize(EntityRegistry.Entry entry, Dto.Search search, ResponseFormat format) {
+        SearchTimer timer = new SearchTimer(metrics, entry.entityType().getName());
+        return slowQueryLogged(timer, search, () -> serialize(entry, search, format, timer));
+    }
+
+    /**
+     * A result cut to the max rows of the entity is always returned in the envelope, flagged as truncated.
+     */
+    private byte[] serialize(EntityRegistry.Entry entry, Dto.Search search, ResponseFormat format, SearchTimer timer) {
+        EntityType<?> entityType = entry.entityType();
+        var page = searchPaging.page(entry, search);
+        SqlProjection sqlProjection = sqlProjectionEnabled ? searchResultSerializer.sqlProjectionFor(entityType, search.projection()) : null;
+        List<Criterion> criteria = criteria(entry, search);
+        timer.shape(() -> metricsShape(criteria));
+        List<?> rows;
+        if (sqlProjection != null) {
+            timer.path("projection");
+            timer.lap("resolve");
+            rows = searchTuples(entry, sqlProjection, entityManager, search, criteria, page, timer);
+        }
+        else {
+            timer.lap("resolve");
+            rows = searchEntities(entry, entityManager, search, criteria, page, timer);
+        }
+        boolean truncated = searchGuard.truncated(entry, rows);
+        rows = searchGuard.cap(entry, rows);
+        timer.rows(rows.size());
+        Dto.PagedResults envelope = null;
+        if (page.envelope() || truncated) {
+            Long total = null;
+            if (page.count()) {
+                total = countEntities(entry, entityManager, criteria);
+                timer.lap("count");
             }
+            envelope = Dto.PagedResults.builder().nextCursor(page.nextCursor(rows, sqlProjection)).total(total).truncated(truncated ? true : null).build();
+        }
+        ObjectWriter rowsWriter = sqlProjection != null ? sqlProjection.writer() : searchResultSerializer.writerFor(entityType.getJavaType(), search.projection());
+        try {
+            byte[] result = searchResultSerializer.write(rowsWriter, rows, envelope, format);
+            timer.lap("serialize");
+            timer.bytes(result.length);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error serializing results of " + entityType.getName(), e);
         }
-        throw new RuntimeException("No entity type '%s' found".formatted(entityName));
     }
 
-    public String searchAndSerialize(String entityName, Dto.Search search) {
-        var result = search(entityName, search);
-        if (result.results() != null && result.results().size() > 0) {
-            try {
-                return serializeEntityTypeList(result.results(), result.entityType(), search);
-            } catch (JsonProcessingException e) {
-                log.error("Error serializing results", e);
-                return "[]";
-            }
+    /**
+     * The search as JSON with map keys sorted, so that the same criteria in another order share the cache entry.
+     */
+    private String cacheKey(Object search) {
+        try {
+            return searchResultSerializer.objectMapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsString(search);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Search cannot be used as a cache key", e);
         }
-        else {
-            return "[]";
+    }
+
+    /**
+     * With a {@code slow-query.threshold}, records the SQL the work runs (with {@code slow-query.capture-sql}) and, when it takes longer
+     * than the threshold, logs it with the request normalized as for the result cache, so that all slow runs of one search read the same.
+     */
+    private <T> T slowQueryLogged(SearchTimer timer, Object request, Supplier<T> work) {
+        if (slowQueryThreshold.isZero() || slowQueryThreshold.isNegative()) {
+            return work.get();
+        }
+        List<String> enclosing = SqlCapture.start();
+        try {
+            return work.get();
+        } finally {
+            List<String> sql = SqlCapture.stop(enclosing);
+            long elapsed = timer.elapsedNanos();
+            if (elapsed > slowQueryThreshold.toNanos()) {
+                log.warn("Slow query on {} took {} ms: {} SQL: {}", timer.entityName(), TimeUnit.NANOSECONDS.toMillis(elapsed), cacheKey(request),
+                        sql.isEmpty() ? "not captured" : String.join("; ", sql));
+            }
         }
     }
 
-    private EntityType<?> getEntityType(String entity, Set<EntityType<?>> entities) {
-        var entityType = entities.stream().filter(e -> e.getName().equalsIgnoreCase(entity)).findFirst().orElse(null);
-        return entityType;
+    private record SearchKey(String entityName, String search, long tablesVersion) {
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        return readOnlyTransaction;
     }
 
     /**
-     * Using multiSelect didn't work on all entities for unknown reasons, so we have to fetch everything and manually filter the results.
-     * An alternative would be to use a DTO projection, dynamically generated, but that would require a lot of reflection and would be more complex.
-     * */
-    private String serializeEntityTypeList(List<?> results, EntityType<?> entityType, Dto.Search search) throws JsonProcessingException {
-        var objectMapper = objectMapper();
-
-        if (search.projection() != null && search.projection().length > 0) {
-            SimpleModule module = new SimpleModule();
-            module.addSerializer(entityType.getJavaType(), new JsonSerializer<Object>() {
-                @Override
-                public void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
-                    ObjectMapper defaultMapper = objectMapper();
-                    ObjectNode objectNode = defaultMapper.valueToTree(value);
-
-                    List<String> projection = Arrays.stream(search.projection()).map(String::toLowerCase).collect(Collectors.toList());
-
-                    ObjectNode filteredNode = defaultMapper.createObjectNode();
-                    for (String path : projection) {
-                        String[] pathSegments = path.contains(".") ? path.split("\\.") : new String[]{path};
-                        buildFilteredNode(pathSegments, objectNode, filteredNode);
-                    }
+     * Resolves and validates eagerly so that errors are still reported with a proper status, then returns a body that
+     * reads the rows with {@link TypedQuery#getResultStream()} in a read-only transaction of its own and writes them as they arrive.
+     * The persistence context is cleared every {@code streaming.clear-every} rows, so heap use does not grow with the result size.
+     * The guard limits of the entity apply to the stream as a whole, see {@link SearchGuard#stream}.
+     */
+    public StreamingResponseBody streamSearch(String entityName, Dto.Search search, Dto.StreamFormat format) {
+        return streamSearch(entityName, search, format, ResponseFormat.JSON);
+    }
 
-                    gen.writeTree(filteredNode);
+    /**
+     * Streams the rows in a response format. Line delimited rows are only written as JSON, NDJSON being a text format.
+     *
+     * @throws IllegalArgumentException for NDJSON in a binary format
+     */
+    public StreamingResponseBody streamSearch(String entityName, Dto.Search search, Dto.StreamFormat format, ResponseFormat responseFormat) {
+        if (format == Dto.StreamFormat.NDJSON && responseFormat.binary()) {
+            throw new IllegalArgumentException("ndjson is only written as JSON, not as " + responseFormat);
+        }
+        EntityRegistry.Entry entry = entityRegistry.entry(entityName);
+        EntityType<?> entityType = entry.entityType();
+        searchRecordValidation(search);
+        var page = searchPaging.page(entry, search);
+        SqlProjection sqlProjection = sqlProjectionEnabled ? searchResultSerializer.sqlProjectionFor(entityType, search.projection()) : null;
+        ObjectWriter writer = responseFormat.writer(sqlProjection != null ? sqlProjection.writer() : searchResultSerializer.writerFor(entityType.getJavaType(), search.projection()));
+        boolean lineDelimited = format == Dto.StreamFormat.NDJSON;
+        ObjectWriter formatWriter = lineDelimited ? writer.withRootValueSeparator("") : writer;
+        TransactionTemplate readOnlyTransaction = readOnlyTransaction();
+        return out -> {
+            try {
+                searchGuard.limit(entry, () -> readOnlyTransaction.execute(status -> {
+                    List<Criterion> criteria = criteria(entry, search);
+                    TypedQuery<?> query = sqlProjection != null
+                            ? createTupleQuery(entry, sqlProjection, entityManager, criteria, page)
+                            : createEntityQuery(entry, entityManager, search, criteria, page);
+                    searchGuard.maxRows(entry, query).setHint("org.hibernate.fetchSize", streamingFetchSize);
+                    try (Stream<?> rows = query.getResultStream(); JsonGenerator gen = formatWriter.createGenerator(StreamUtils.nonClosing(out))) {
+                        formatWriter.writeValue(gen, new SearchResultSerializer.Rows(clearingEvery(entityManager, searchGuard.stream(entry, rows.iterator())), lineDelimited));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (TransactionSystemException e) {
+                // the pool drops a connection whose statement timed out, so its rollback fails and hides the timeout
+                if (e.getApplicationException() instanceof RuntimeException overridden) {
+                    throw overridden;
                 }
+                throw e;
+            }
+        };
+    }
 
-                private static void buildFilteredNode(String[] pathSegments, ObjectNode objectNode, ObjectNode filteredNode) {
-                    ObjectNode currentNode = objectNode;
-                    for (String segment : pathSegments) {
-                        if (currentNode.has(segment)) {
-                            JsonNode childNode = currentNode.get(segment);
-                            if (childNode.isObject()) {
-                                currentNode = (ObjectNode) childNode;
-                            }
-                            else {
-                                filteredNode.set(segment, childNode);
-                                break;
-                            }
-                        }
-                        else {
-                            break;
-                        }
-                    }
+    private Iterable<?> clearingEvery(EntityManager entityManager, Iterator<?> rows) {
+        return () -> new Iterator<Object>() {
+            private long count;
+
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                if (streamingClearEvery > 0 && count > 0 && count % streamingClearEvery == 0) {
+                    entityManager.clear();
                 }
-            });
+                count++;
+                return rows.next();
+            }
+        };
+    }
+
+    /**
+     * The execute phase includes the hydration of the entities, which Hibernate does while it reads the rows.
+     */
+    private List<?> searchEntities(EntityRegistry.Entry entry, EntityManager entityManager, Dto.Search search, List<Criterion> criteria, SearchPaging.Page page, SearchTimer timer) {
+        var query = searchGuard.maxRows(entry, createEntityQuery(entry, entityManager, search, criteria, page));
+        query.setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.USE);
+        query.setHint("jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.USE);
+        timer.lap("plan");
+        var results = query.getResultList();
+        recordForIndexAdvisor(entry, search.where(), timer.lap("execute"));
+        return results;
+    }
+
+    /**
+     * Selects only the projected columns, see {@link SqlProjection}. Entities are never hydrated on this path.
+     */
+    private List<Tuple> searchTuples(EntityRegistry.Entry entry, SqlProjection sqlProjection, EntityManager entityManager, Dto.Search search, List<Criterion> criteria, SearchPaging.Page page, SearchTimer timer) {
+        var query = searchGuard.maxRows(entry, createTupleQuery(entry, sqlProjection, entityManager, criteria, page));
+        timer.lap("plan");
+        var results = query.getResultList();
+        recordForIndexAdvisor(entry, search.where(), timer.lap("execute"));
+        return results;
+    }
 
-            objectMapper.registerModule(module);
+    private void recordForIndexAdvisor(EntityRegistry.Entry entry, Dto.Where where, long executeNanos) {
+        if (indexAdvisor != null) {
+            try {
+                indexAdvisor.record(entry, where, executeNanos);
+            } catch (RuntimeException e) {
+                log.warn("Index advisor could not record a search on {}", entry.entityType().getName(), e);
+            }
         }
-        var javaTypeList = TypeFactory.defaultInstance().constructCollectionType(List.class, entityType.getJavaType());
-        var writer = objectMapper.writerFor(javaTypeList);
-        var json = writer.writeValueAsString(results);
-        return json;
     }
 
-    private List<?> searchEntities(Class<?> domainClass, EntityManager entityManager, Dto.Search search) {
-        var whereIsPresent = searchRecordValidation(search);
+    /**
+     * The total only applies the where criteria, not the cursor or the limit, and is only run when requested.
+     */
+    private Long countEntities(EntityRegistry.Entry entry, EntityManager entityManager, List<Criterion> criteria) {
+        CriteriaQuery<Long> criteriaQuery = queryPlanCache.plan(shape(entry, Long.class, null, criteria, null), () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Long> countQuery = criteriaBuilder.createQuery(Long.class);
+            Root<?> root = countQuery.from(entry.javaType());
+            countQuery.select(criteriaBuilder.count(root));
+            where(countQuery, buildPredicates(criteria, criteriaBuilder, root));
+            return countQuery;
+        });
+        return searchGuard.timeout(entry, bind(readOnly(entityManager.createQuery(criteriaQuery)), criteria)).getSingleResult();
+    }
 
-        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<?> criteriaQuery = criteriaBuilder.createQuery(domainClass);
-        Root<?> root = criteriaQuery.from(domainClass);
+    /**
+     * Runs the where criteria of the aggregate with the aggregations selected and grouped in the database, so only the aggregated
+     * rows are read. Each row maps the group by attributes and the aggregation aliases to their values, rows are ordered by the group by attributes.
+     * Like {@link #search(String, Dto.Search)} the read-only transaction only begins once the permit is taken.
+     *
+     * @throws IllegalArgumentException when an attribute is not whitelisted, see {@link AggregationWhitelist}, or a function does not apply to it
+     */
+    public List<Map<String, Object>> aggregate(String entityName, Dto.Aggregate aggregate) {
+        EntityRegistry.Entry entry = entityRegistry.entry(entityName);
+        SearchTimer timer = new SearchTimer(metrics, entry.entityType().getName());
+        timer.path("aggregate");
+        List<SingularAttribute<?, ?>> groupBy = new ArrayList<>();
+        if (aggregate.groupBy() != null) {
+            aggregate.groupBy().forEach(fieldName -> groupBy.add(aggregationWhitelist.attribute(entry, fieldName)));
+        }
+        List<Aggregation> aggregations = aggregations(entry, aggregate);
+        List<Criterion> criteria = criteria(entry, aggregate.where());
+        timer.shape(() -> metricsShape(criteria));
+        timer.lap("resolve");
+        String aggregateShape = groupBy.stream().map(SingularAttribute::getName).toList() + ":" + aggregations.stream().map(Aggregation::shape).toList();
+        CriteriaQuery<Tuple> criteriaQuery = queryPlanCache.plan(shape(entry, Tuple.class, null, criteria, null, aggregateShape), () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Tuple> aggregateQuery = criteriaBuilder.createTupleQuery();
+            Root<?> root = aggregateQuery.from(entry.javaType());
+            List<Selection<?>> selections = new ArrayList<>();
+            List<Expression<?>> groupByPaths = new ArrayList<>();
+            for (SingularAttribute<?, ?> attribute : groupBy) {
+                Path<?> path = root.get(attribute.getName());
+                selections.add(path.alias(attribute.getName()));
+                groupByPaths.add(path);
+            }
+            for (Aggregation aggregation : aggregations) {
+                selections.add(aggregation.expression(criteriaBuilder, root).alias(aggregation.alias()));
+            }
+            aggregateQuery.multiselect(selections);
+            where(aggregateQuery, buildPredicates(criteria, criteriaBuilder, root));
+            if (!groupByPaths.isEmpty()) {
+                aggregateQuery.groupBy(groupByPaths);
+                aggregateQuery.orderBy(groupByPaths.stream().map(criteriaBuilder::asc).toList());
+            }
+            return aggregateQuery;
+        });
+        timer.lap("plan");
+        List<Tuple> tuples = searchGuard.limit(entry, () -> readOnlyTransaction().execute(status -> {
+            TypedQuery<Tuple> query = searchGuard.timeout(entry, bind(readOnly(entityManager.createQuery(criteriaQuery)), criteria));
+            return slowQueryLogged(timer, aggregate, query::getResultList);
+        }));
+        recordForIndexAdvisor(entry, aggregate.where(), timer.lap("execute"));
+        timer.rows(tuples.size());
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
 
-        List<Predicate> predicates = new ArrayList<>();
-        Field[] fields = domainClass.getDeclaredFields();
-        if (whereIsPresent && search.where().like() != null && search.where().like().values().stream().allMatch(value -> value != null)) {
-            addLikePredicates(search, criteriaBuilder, root, predicates, fields);
+    private List<Aggregation> aggregations(EntityRegistry.Entry entry, Dto.Aggregate aggregate) {
+        if (aggregate.aggregations() == null || aggregate.aggregations().isEmpty()) {
+            throw new IllegalArgumentException("At least one aggregation is required");
+        }
+        List<Aggregation> aggregations = new ArrayList<>();
+        Set<String> aliases = new HashSet<>(aggregate.groupBy() != null ? aggregate.groupBy() : List.of());
+        for (Dto.Aggregation requested : aggregate.aggregations()) {
+            if (requested == null || requested.function() == null) {
+                throw new IllegalArgumentException("Every aggregation needs a function");
+            }
+            SingularAttribute<?, ?> attribute = null;
+            if (requested.field() != null || requested.function() != Dto.AggregateFunction.COUNT) {
+                attribute = aggregationWhitelist.attribute(entry, requested.field());
+            }
+            Class<?> javaType = attribute != null ? ClassUtils.resolvePrimitiveIfNecessary(attribute.getJavaType()) : null;
+            if ((requested.function() == Dto.AggregateFunction.SUM || requested.function() == Dto.AggregateFunction.AVG) && !Number.class.isAssignableFrom(javaType)) {
+                throw new IllegalArgumentException("%s needs a numeric attribute, %s is not".formatted(requested.function(), requested.field()));
+            }
+            if ((requested.function() == Dto.AggregateFunction.MIN || requested.function() == Dto.AggregateFunction.MAX) && !Comparable.class.isAssignableFrom(javaType)) {
+                throw new IllegalArgumentException("%s needs a comparable attribute, %s is not".formatted(requested.function(), requested.field()));
+            }
+            String alias = requested.alias() != null ? requested.alias() : defaultAlias(requested.function(), attribute);
+            if (!aliases.add(alias)) {
+                throw new IllegalArgumentException("Duplicate aggregation alias '%s'".formatted(alias));
+            }
+            aggregations.add(new Aggregation(requested.function(), attribute, alias));
         }
-        if (whereIsPresent && search.where().equalsLong() != null && search.where().equalsLong().values().stream().allMatch(value -> value != null)) {
-            addEqualsLongPredicates(search, criteriaBuilder, root, predicates, fields);
+        return aggregations;
+    }
+
+    private static String defaultAlias(Dto.AggregateFunction function, SingularAttribute<?, ?> attribute) {
+        String[] words = function.name().toLowerCase().split("_");
+        StringBuilder alias = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            alias.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
         }
-        if (whereIsPresent && search.where().notEqualsLong() != null && search.where().notEqualsLong().values().stream().allMatch(value -> value != null)) {
-            addNotEqualsLongPredicates(search, criteriaBuilder, root, predicates, fields);
+        if (attribute != null) {
+            alias.append(Character.toUpperCase(attribute.getName().charAt(0))).append(attribute.getName().substring(1));
         }
-        if (whereIsPresent && search.where().isNotNull() != null && search.where().isNotNull().stream().allMatch(value -> value != null)) {
-            addIsNotNullPredicates(search, fields, root, criteriaBuilder, predicates);
+        return alias.toString();
+    }
+
+    /**
+     * @param attribute null only for a count of the rows
+     */
+    private record Aggregation(Dto.AggregateFunction function, SingularAttribute<?, ?> attribute, String alias) {
+
+        String shape() {
+            return function + ":" + (attribute != null ? attribute.getName() : "*") + ":" + alias;
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        Expression<?> expression(CriteriaBuilder criteriaBuilder, Root<?> root) {
+            Path path = attribute != null ? root.get(attribute.getName()) : null;
+            return switch (function) {
+                case COUNT -> criteriaBuilder.count(path != null ? path : root);
+                case COUNT_DISTINCT -> criteriaBuilder.countDistinct(path);
+                case SUM -> criteriaBuilder.sum((Expression<Number>) path);
+                case AVG -> criteriaBuilder.avg((Expression<Number>) path);
+                case MIN -> criteriaBuilder.least((Expression<Comparable>) path);
+                case MAX -> criteriaBuilder.greatest((Expression<Comparable>) path);
+            };
         }
-        if (whereIsPresent && search.where().isNull() != null && search.where().isNull().stream().allMatch(value -> value != null)) {
-            addIsNullPredicates(search, fields, root, criteriaBuilder, predicates);
+    }
+
+    private TypedQuery<?> createEntityQuery(EntityRegistry.Entry entry, EntityManager entityManager, Dto.Search search, List<Criterion> criteria, SearchPaging.Page page) {
+        CriteriaQuery<Object> criteriaQuery = queryPlanCache.plan(shape(entry, entry.javaType(), null, criteria, page), () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object> entityQuery = criteriaBuilder.createQuery((Class<Object>) entry.javaType());
+            Root<?> root = entityQuery.from(entry.javaType());
+
+            List<Predicate> predicates = buildPredicates(criteria, criteriaBuilder, root);
+            page.orderAndSeek(entityQuery, criteriaBuilder, root, predicates);
+            where(entityQuery, predicates);
+            return entityQuery;
+        });
+        var query = bind(readOnly(entityManager.createQuery(criteriaQuery)), criteria);
+        var fetchGraph = FetchGraphs.forProjection(entityManager, entry.entityType(), search.projection());
+        if (fetchGraph != null) {
+            query.setHint(FetchGraphs.LOAD_GRAPH, fetchGraph);
         }
-        if (whereIsPresent && search.where().equalsString() != null  && search.where().equalsString().values().stream().allMatch(value -> value != null)) {
-            addEqualsStringPredicates(search, criteriaBuilder, root, predicates, fields);
+        page.bind(query);
+        return query;
+    }
+
+    private TypedQuery<Tuple> createTupleQuery(EntityRegistry.Entry entry, SqlProjection sqlProjection, EntityManager entityManager, List<Criterion> criteria, SearchPaging.Page page) {
+        CriteriaQuery<Tuple> criteriaQuery = queryPlanCache.plan(shape(entry, Tuple.class, sqlProjection, criteria, page), () -> {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Tuple> tupleQuery = criteriaBuilder.createTupleQuery();
+            Root<?> root = tupleQuery.from(entry.javaType());
+            List<Selection<?>> selections = new ArrayList<>(sqlProjection.select(root));
+            page.selectCursor(selections, root, sqlProjection);
+            tupleQuery.multiselect(selections);
+
+            List<Predicate> predicates = buildPredicates(criteria, criteriaBuilder, root);
+            page.orderAndSeek(tupleQuery, criteriaBuilder, root, predicates);
+            where(tupleQuery, predicates);
+            return tupleQuery;
+        });
+        var query = bind(readOnly(entityManager.createQuery(criteriaQuery)), criteria);
+        page.bind(query);
+        return query;
+    }
+
+    private static QueryPlanCache.Shape shape(EntityRegistry.Entry entry, Class<?> resultType, SqlProjection sqlProjection, List<Criterion> criteria, SearchPaging.Page page) {
+        return shape(entry, resultType, sqlProjection, criteria, page, null);
+    }
+
+    private static QueryPlanCache.Shape shape(EntityRegistry.Entry entry, Class<?> resultType, SqlProjection sqlProjection, List<Criterion> criteria, SearchPaging.Page page, String aggregate) {
+        return new QueryPlanCache.Shape(entry.javaType(), resultType, sqlProjection, criteria.stream().map(Criterion::shape).toList(), page != null ? page.shape() : null, aggregate);
+    }
+
+    /**
+     * The operators of the criteria with their attributes, e.g. {@code equalsString(status) like(name)}. Values are left out and names
+     * that are not attributes of the entity were dropped with their criteria, so the number of shapes is bounded by the entity, not by
+     * what clients send.
+     */
+    private static String metricsShape(List<Criterion> criteria) {
+        if (criteria.isEmpty()) {
+            return "all";
         }
+        Map<Operator, Set<String>> attributeNames = new EnumMap<>(Operator.class);
+        criteria.forEach(criterion -> attributeNames.computeIfAbsent(criterion.operator(), operator -> new TreeSet<>()).add(criterion.attribute().getName()));
+        return attributeNames.entrySet().stream().map(e -> e.getKey().key + "(" + String.join(",", e.getValue()) + ")").collect(Collectors.joining(" "));
+    }
+
+    private static void where(CriteriaQuery<?> criteriaQuery, List<Predicate> predicates) {
         if (predicates.size() > 0) {
             criteriaQuery.where(predicates.toArray(new Predicate[predicates.size()]));
         }
-        var query = entityManager.createQuery(criteriaQuery);
-        //compensate for db load hit from fake projection in serializeEntityTypeList
-        query.setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.USE);
-        query.setHint("jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.USE);
-        var results = query.getResultList();
-        return results;
     }
 
-    private void addIsNullPredicates(Dto.Search search, Field[] fields, Root<?> root, CriteriaBuilder criteriaBuilder, List<Predicate> predicates) {
-        for (var fieldName : search.where().isNull()) {
-            Arrays.stream(fields).filter(f -> {
-                var eq = f.getName().equalsIgnoreCase(fieldName);
-                log.debug("addIsNullPredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fname = f.getName();
-                Path rootName = root.get(fname);
-                log.debug("addIsNullPredicates: fieldName: {}, rootName: {}", fname, rootName);
-                var predicate = criteriaBuilder.isNull(rootName);
-                log.debug("addIsNullPredicates: predicate: {}", predicate);
-                predicates.add(predicate);
-            });
+    /**
+     * Searches never write: nothing is flushed before the query, and loaded entities get no snapshot for dirty checking,
+     * also when the search joins a read-write transaction of the caller.
+     */
+    private static <T> TypedQuery<T> readOnly(TypedQuery<T> query) {
+        query.setHint("org.hibernate.readOnly", true);
+        query.setHint("org.hibernate.flushMode", FlushMode.MANUAL);
+        return query;
+    }
+
+    /**
+     * The where criteria in a fixed order (operator, then attribute name), so that the same criteria always give the same query shape.
+     * Criteria on names that are not attributes of the entity are ignored, as are operators with a null value, as they always have been.
+     */
+    private List<Criterion> criteria(EntityRegistry.Entry entry, Dto.Search search) {
+        return searchRecordValidation(search) ? criteria(entry, search.where()) : List.of();
+    }
+
+    private List<Criterion> criteria(EntityRegistry.Entry entry, Dto.Where where) {
+        List<Criterion> criteria = new ArrayList<>();
+        if (where != null) {
+            addLikeCriteria(criteria, entry, where.like(), where.likeMode());
+            addCriteria(criteria, entry, Operator.EQUALS_LONG, where.equalsLong());
+            addCriteria(criteria, entry, Operator.NOT_EQUALS_LONG, where.notEqualsLong());
+            addCriteria(criteria, entry, Operator.IS_NOT_NULL, where.isNotNull());
+            addCriteria(criteria, entry, Operator.IS_NULL, where.isNull());
+            addCriteria(criteria, entry, Operator.EQUALS_STRING, where.equalsString());
+            addCriteria(criteria, entry, Operator.IN, where.in());
+            addCriteria(criteria, entry, Operator.BETWEEN, where.between());
+            addCriteria(criteria, entry, Operator.GT, where.gt());
+            addCriteria(criteria, entry, Operator.GTE, where.gte());
+            addCriteria(criteria, entry, Operator.LT, where.lt());
+            addCriteria(criteria, entry, Operator.LTE, where.lte());
         }
+        return criteria;
     }
 
-    private void addIsNotNullPredicates(Dto.Search search, Field[] fields, Root<?> root, CriteriaBuilder criteriaBuilder, List<Predicate> predicates) {
-        for (var fieldName : search.where().isNotNull()) {
-            Arrays.stream(fields).filter(f -> {
-                var eq = f.getName().equalsIgnoreCase(fieldName);
-                log.debug("addIsNotNullPredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fname = f.getName();
-                Path rootName = root.get(fname);
-                log.debug("addIsNotNullPredicates: fieldName: {}, rootName: {}", fname, rootName);
-                var predicate = criteriaBuilder.isNotNull(rootName);
-                log.debug("addIsNotNullPredicates: predicate: {}", predicate);
-                predicates.add(predicate);
-            });
+    private void addCriteria(List<Criterion> criteria, EntityRegistry.Entry entry, Operator operator, Map<String, ?> values) {
+        if (values != null && values.values().stream().allMatch(value -> value != null)) {
+            values.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> addCriterion(criteria, entry, operator, e.getKey(), e.getValue()));
         }
     }
 
-    public void addEqualsStringPredicates(Dto.Search search, CriteriaBuilder criteriaBuilder, Root<?> root, List<Predicate> predicates, Field[] fields) {
-        for (var entry : search.where().equalsString().entrySet()) {
-            Arrays.stream(fields).filter(f -> {
-                var fieldName = f.getName();
-                log.debug("addEqualsStringPredicates: fieldName: {}, entry.key: {}", fieldName, entry.getKey());
-                var eq = fieldName.equalsIgnoreCase(entry.getKey());
-                log.debug("addEqualsStringPredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fieldName = f.getName();
-                Path rootName = root.get(fieldName);
-                var value = entry.getValue();
-                log.debug("addEqualsStringPredicates: fieldName: {}, value: {}, rootName: {}", fieldName, value, rootName);
-                var predicate = criteriaBuilder.equal(rootName, value);
-                log.debug("addEqualsStringPredicates: predicate: {}", predicate);
-                predicates.add(predicate);
+    private void addLikeCriteria(List<Criterion> criteria, EntityRegistry.Entry entry, Map<String, String> values, Map<String, Dto.MatchMode> modes) {
+        if (values != null && values.values().stream().allMatch(value -> value != null)) {
+            Map<String, Dto.MatchMode> requestedModes = new HashMap<>();
+            if (modes != null) {
+                modes.forEach((fieldName, mode) -> requestedModes.put(fieldName.toLowerCase(), mode));
+            }
+            values.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> {
+                var attribute = entry.attribute(e.getKey());
+                if (attribute == null) {
+                    log.debug("{} is not an attribute of {}, criteria ignored", e.getKey(), entry.entityType().getName());
+                    return;
+                }
+                var match = matchModes.match(entry, attribute, requestedModes.get(e.getKey().toLowerCase()));
+                criteria.add(new Criterion(Operator.LIKE, attribute, match.value(e.getValue()), match));
             });
         }
     }
 
-    private void addLikePredicates(Dto.Search search, CriteriaBuilder criteriaBuilder, Root<?> root, List<Predicate> predicates, Field[] fields) {
-        for (var entry : search.where().like().entrySet()) {
-            Arrays.stream(fields).filter(f -> {
-                var fieldName = f.getName();
-                log.debug("addLikePredicates: fieldName: {}, entry.key: {}", fieldName, entry.getKey());
-                var eq = fieldName.equalsIgnoreCase(entry.getKey());
-                log.debug("addLikePredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fieldName = f.getName();
-                Path rootName = root.get(fieldName);
-                var value = entry.getValue();
-                log.debug("addLikePredicates: fieldName: {}, value: {}, rootName: {}", fieldName, value, rootName);
-                var predicate = criteriaBuilder.like(criteriaBuilder.lower(rootName), ("%" + value.toLowerCase() + "%"));
-                log.debug("addLikePredicates: predicate: {}", predicate);
-                predicates.add(predicate);
-            });
+    private void addCriteria(List<Criterion> criteria, EntityRegistry.Entry entry, Operator operator, Set<String> fieldNames) {
+        if (fieldNames != null && fieldNames.stream().allMatch(value -> value != null)) {
+            fieldNames.stream().sorted().forEach(fieldName -> addCriterion(criteria, entry, operator, fieldName, null));
         }
     }
 
-    private void addEqualsLongPredicates(Dto.Search search, CriteriaBuilder criteriaBuilder, Root<?> root, List<Predicate> predicates, Field[] fields) {
-        for (var entry : search.where().equalsLong().entrySet()) {
-            Arrays.stream(fields).filter(f -> {
-                var fieldName = f.getName();
-                log.debug("addEqualsLongPredicates: fieldName: {}, entry.key: {}", fieldName, entry.getKey());
-                var eq = fieldName.equalsIgnoreCase(entry.getKey());
-                log.debug("addEqualsLongPredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fieldName = f.getName();
-                Path rootName = root.get(fieldName);
-                var value = entry.getValue();
-                log.debug("addEqualsLongPredicates: fieldName: {}, value: {}, rootName: {}", fieldName, value, rootName);
-                var predicate = criteriaBuilder.equal(rootName, value);
-                log.debug("addEqualsLongPredicates: predicate: {}", predicate);
-                predicates.add(predicate);
-            });
+    private void addCriterion(List<Criterion> criteria, EntityRegistry.Entry entry, Operator operator, String fieldName, Object value) {
+        var attribute = entry.attribute(fieldName);
+        if (attribute == null) {
+            log.debug("{} is not an attribute of {}, criteria ignored", fieldName, entry.entityType().getName());
+            return;
+        }
+        Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(attribute.getJavaType());
+        if (operator.range() && !Comparable.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("%s needs a comparable attribute, %s is not".formatted(operator, fieldName));
+        }
+        if (value != null) {
+            value = switch (operator) {
+                case IN -> chunks(((List<?>) value).stream().map(element -> convert(element, type, fieldName)).distinct().toList());
+                case BETWEEN -> {
+                    Dto.Range range = (Dto.Range) value;
+                    yield List.of(convert(range.from(), type, fieldName), convert(range.to(), type, fieldName));
+                }
+                default -> convert(value, type, fieldName);
+            };
         }
+        criteria.add(new Criterion(operator, attribute, value, null));
     }
 
-    private void addNotEqualsLongPredicates(Dto.Search search, CriteriaBuilder criteriaBuilder, Root<?> root, List<Predicate> predicates, Field[] fields) {
-        for (var entry : search.where().notEqualsLong().entrySet()) {
-            Arrays.stream(fields).filter(f -> {
-                var fieldName = f.getName();
-                log.debug("addNotEqualsLongPredicates: fieldName: {}, entry.key: {}", fieldName, entry.getKey());
-                var eq = fieldName.equalsIgnoreCase(entry.getKey());
-                log.debug("addEqualsLongPredicates: eq: {}", eq);
-                return eq;
-            }).findFirst().ifPresent(f -> {
-                f.setAccessible(true);
-                var fieldName = f.getName();
-                Path rootName = root.get(fieldName);
-                var value = entry.getValue();
-                log.debug("addNotEqualsLongPredicates: fieldName: {}, value: {}, rootName: {}", fieldName, value, rootName);
-                var predicate = criteriaBuilder.notEqual(rootName, value);
-                log.debug("addNotEqualsLongPredicates: predicate: {}", predicate);
-                predicates.add(predicate);
-            });
+    private Object convert(Object value, Class<?> type, String fieldName) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for %s".formatted(fieldName));
+        }
+        return searchResultSerializer.objectMapper().convertValue(value, type);
+    }
+
+    /**
+     * Splits the values of an {@code in} into lists of at most {@code in.chunk-size}, each bound to a parameter of its own and or-ed together,
+     * which keeps every IN list under the limits of databases such as Oracle (1000).
+     */
+    private List<List<Object>> chunks(List<Object> values) {
+        int chunkSize = Math.max(1, inChunkSize);
+        List<List<Object>> chunks = new ArrayList<>();
+        for (int start = 0; start < values.size(); start += chunkSize) {
+            chunks.add(values.subList(start, Math.min(values.size(), start + chunkSize)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Builds the predicates with a named parameter ("p" and the position of the criterion) in place of each value.
+     * Parameters have the type of their attribute, the values are converted to it when the criteria are read.
+     */
+    private List<Predicate> buildPredicates(List<Criterion> criteria, CriteriaBuilder criteriaBuilder, Root<?> root) {
+        List<Predicate> predicates = new ArrayList<>();
+        for (int i = 0; i < criteria.size(); i++) {
+            Criterion criterion = criteria.get(i);
+            Path<?> path = root.get(criterion.attribute().getName());
+            String parameter = "p" + i;
+            var predicate = switch (criterion.operator()) {
+                case LIKE -> criterion.match().predicate(criteriaBuilder, root, criterion.attribute(), criteriaBuilder.parameter(String.class, parameter));
+                case EQUALS_LONG, EQUALS_STRING -> criteriaBuilder.equal(path, criteriaBuilder.parameter(criterion.parameterType(), parameter));
+                case NOT_EQUALS_LONG -> criteriaBuilder.notEqual(path, criteriaBuilder.parameter(criterion.parameterType(), parameter));
+                case IS_NULL -> criteriaBuilder.isNull(path);
+                case IS_NOT_NULL -> criteriaBuilder.isNotNull(path);
+                case IN -> in(criteriaBuilder, path, criterion, parameter);
+                case BETWEEN -> criteriaBuilder.between(comparable(path), criteriaBuilder.parameter(criterion.comparableType(), parameter + "_0"), criteriaBuilder.parameter(criterion.comparableType(), parameter + "_1"));
+                case GT -> criteriaBuilder.greaterThan(comparable(path), criteriaBuilder.parameter(criterion.comparableType(), parameter));
+                case GTE -> criteriaBuilder.greaterThanOrEqualTo(comparable(path), criteriaBuilder.parameter(criterion.comparableType(), parameter));
+                case LT -> criteriaBuilder.lessThan(comparable(path), criteriaBuilder.parameter(criterion.comparableType(), parameter));
+                case LTE -> criteriaBuilder.lessThanOrEqualTo(comparable(path), criteriaBuilder.parameter(criterion.comparableType(), parameter));
+            };
+            log.debug("buildPredicates: {} {}: {}", criterion.operator(), criterion.attribute().getName(), predicate);
+            predicates.add(predicate);
+        }
+        return predicates;
+    }
+
+    /**
+     * One {@code in} per chunk of values, see {@link #chunks(List)}, or-ed together. An empty list matches nothing.
+     */
+    private static Predicate in(CriteriaBuilder criteriaBuilder, Path<?> path, Criterion criterion, String parameter) {
+        List<Predicate> chunks = new ArrayList<>();
+        for (int c = 0; c < criterion.chunks().size(); c++) {
+            chunks.add(path.in(criteriaBuilder.parameter(Collection.class, parameter + "_" + c)));
+        }
+        return chunks.size() == 1 ? chunks.get(0) : criteriaBuilder.or(chunks.toArray(new Predicate[0]));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Expression<Comparable> comparable(Path<?> path) {
+        return (Expression<Comparable>) path;
+    }
+
+    private static <T> TypedQuery<T> bind(TypedQuery<T> query, List<Criterion> criteria) {
+        for (int i = 0; i < criteria.size(); i++) {
+            Criterion criterion = criteria.get(i);
+            switch (criterion.operator()) {
+                case LIKE, EQUALS_LONG, NOT_EQUALS_LONG, EQUALS_STRING, GT, GTE, LT, LTE -> query.setParameter("p" + i, criterion.value());
+                case IN -> {
+                    for (int c = 0; c < criterion.chunks().size(); c++) {
+                        query.setParameter("p" + i + "_" + c, criterion.chunks().get(c));
+                    }
+                }
+                case BETWEEN -> {
+                    query.setParameter("p" + i + "_0", ((List<?>) criterion.value()).get(0));
+                    query.setParameter("p" + i + "_1", ((List<?>) criterion.value()).get(1));
+                }
+                default -> {
+                }
+            }
+        }
+        return query;
+    }
+
+    private enum Operator {
+        LIKE("like"), EQUALS_LONG("equalsLong"), NOT_EQUALS_LONG("notEqualsLong"), IS_NOT_NULL("isNotNull"), IS_NULL("isNull"),
+        EQUALS_STRING("equalsString"), IN("in"), BETWEEN("between"), GT("gt"), GTE("gte"), LT("lt"), LTE("lte");
+
+        /**
+         * The name of the operator in {@link Dto.Where}.
+         */
+        private final String key;
+
+        Operator(String key) {
+            this.key = key;
+        }
+
+        boolean range() {
+            return this == BETWEEN || this == GT || this == GTE || this == LT || this == LTE;
+        }
+    }
+
+    /**
+     * @param value the converted value; for {@code like} the value as bound for the match, for {@code in} the values in chunks, for {@code between} the two bounds
+     * @param match how a {@code like} matches, null for the other operators
+     */
+    private record Criterion(Operator operator, SingularAttribute<?, ?> attribute, Object value, MatchModes.Match match) {
+
+        /**
+         * The number of chunks of an {@code in} is part of the shape, as each is a parameter of its own.
+         */
+        String shape() {
+            return operator + ":" + attribute.getName() + (operator == Operator.IN ? ":" + chunks().size() : "") + (match != null ? ":" + match.shape() : "");
+        }
+
+        Class<?> parameterType() {
+            return ClassUtils.resolvePrimitiveIfNecessary(attribute.getJavaType());
+        }
+
+        @SuppressWarnings("rawtypes")
+        Class<Comparable> comparableType() {
+            return (Class<Comparable>) parameterType();
+        }
+
+        List<List<Object>> chunks() {
+            return (List<List<Object>>) value;
         }
     }
 
@@ -311,11 +824,14 @@ public class JpaCriteriaSearchService {
         var likeIsEmpty = whereIsPresent && (where.like() == null || where.like().isEmpty());
         var equalsLongIsEmpty = whereIsPresent && (where.equalsLong() == null || where.equalsLong().isEmpty());
         var notEqualsLongIsEmpty = whereIsPresent && (where.notEqualsLong() == null || where.notEqualsLong().isEmpty());
+        var equalsStringIsEmpty = whereIsPresent && (where.equalsString() == null || where.equalsString().isEmpty());
         var isNullIsEmpty = whereIsPresent && (where.isNull() == null || where.isNull().isEmpty());
         var isNotNullIsEmpty = whereIsPresent && (where.isNotNull() == null || where.isNotNull().isEmpty());
+        var rangesAreEmpty = whereIsPresent && Stream.of(where.in(), where.between(), where.gt(), where.gte(), where.lt(), where.lte()).allMatch(values -> values == null || values.isEmpty());
 
-        if (likeIsEmpty && equalsLongIsEmpty && isNullIsEmpty && isNotNullIsEmpty && projectionIsEmpty && notEqualsLongIsEmpty) {
-            throw new IllegalStateException("search.where().like(), search.where().equalsLong(), search.where().isNull(), search.isNotNullIsEmpty(), and search.projection are all null or empty, which is not supported");
+        if (likeIsEmpty && equalsLongIsEmpty && isNullIsEmpty && isNotNullIsEmpty && projectionIsEmpty && notEqualsLongIsEmpty && equalsStringIsEmpty && rangesAreEmpty) {
+            throw new IllegalStateException("search.where() has no like, equalsLong, notEqualsLong, equalsString, isNull, isNotNull, in, between, gt, gte, lt or lte criteria "
+                    + "and search.projection() is null or empty, which is not supported");
         }
         return whereIsPresent;
     }
@@ -1,36 +1,52 @@
 package com.fluidnotions.genericjpacriteriarest;
 
 import io.swagger.v3.oas.annotations.Operation;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.Query;
-import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
-@RequiredArgsConstructor
 @RestController()
 @RequestMapping("${rest-jpa-criteria-search.controller-path-prefix:/}")
-public class JpaPatchController {
+public class JpaPatchController extends AbstractJpaPatchController {
 
 
-    private final JpaPatchService jpaPatchService;
+    public JpaPatchController(JpaPatchService jpaPatchService, @Nullable WriteBehindPatchQueue writeBehindPatchQueue) {
+        super(jpaPatchService, writeBehindPatchQueue);
+    }
 
-    @Operation(summary = "Patch update by table column name on any table", description = "Patch update by table column name on any table independent of project orm mappings. The payload is json property name is column name and value", tags = {"2. generic-jpa-criteria-rest"})
+    @Operation(summary = "Patch update by table column name on any table", description = "Patch update by table column name on any table independent of project orm mappings. The payload is json property name is column name and value. With write-behind enabled the patch is queued and written asynchronously (202), 503 when the queue is full", tags = {"2. generic-jpa-criteria-rest"})
     @PatchMapping("patch/{tableName}/{primaryKey}/{primaryKeyValue}")
     public ResponseEntity<Void> updateTable(
             @PathVariable String tableName, @PathVariable String primaryKey, @PathVariable Object primaryKeyValue, @RequestBody Map<String, Object> params
-    ) {
+    ) throws HttpResponseException {
         log.debug("Updating table: {} with params: {}", tableName, params);
-        jpaPatchService.patchTable(tableName, params, primaryKey, primaryKeyValue);
+        ResponseEntity<Void> queued = enqueue(tableName, params, primaryKey, primaryKeyValue);
+        if (queued != null) {
+            return queued;
+        }
+        try {
+            jpaPatchService.patchTable(tableName, params, primaryKey, primaryKeyValue);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e);
+        }
         return ResponseEntity.noContent().build();
     }
 
-
-
-
+    @Operation(summary = "Patch many rows of any table", description = "Patch update of many rows of a table by primary key column name. The payload is a list of {key, values}, values maps column names to new values. Rows are sent in JDBC batches and committed in chunks, the response has the update count of each row", tags = {"2. generic-jpa-criteria-rest"})
+    @PatchMapping("patch/{tableName}/{primaryKey}")
+    public ResponseEntity<Dto.BulkPatchResult> updateRows(
+            @PathVariable String tableName, @PathVariable String primaryKey, @RequestBody List<Dto.PatchRow> rows
+    ) throws HttpResponseException {
+        log.debug("Updating {} rows of table: {}", rows.size(), tableName);
+        try {
+            return ResponseEntity.ok(jpaPatchService.patchRows(tableName, primaryKey, rows));
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e);
+        }
+    }
 }
@@ -5,9 +5,24 @@ import jakarta.persistence.Query;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -16,23 +31,131 @@ public class JpaPatchService {
 
 
     private final EntityManager entityManager;
+    private final List<TableChangeListener> tableChangeListeners;
+    private final PlatformTransactionManager transactionManager;
+    private final UpdateStatements updateStatements;
+    private final TableColumns tableColumns;
+    private final CriteriaRestMetrics metrics;
+    @Value("${rest-jpa-criteria-search.patch.chunk-size:1000}")
+    private int chunkSize;
 
     @Transactional
     public void patchTable(String tableName, Map<String, Object> params, String primaryKey, Object primaryKeyValue) {
         if (params.isEmpty()) {
             throw new IllegalArgumentException("No parameters provided for update");
         }
-        StringBuilder queryBuilder = new StringBuilder("UPDATE ");
-        queryBuilder.append(tableName).append(" SET ");
-        params.forEach((key, value) -> {
-            queryBuilder.append(key).append(" = :").append(key).append(", ");
-        });
-        // Remove the last comma and space
-        queryBuilder.setLength(queryBuilder.length() - 2);
-        queryBuilder.append(" WHERE ").append(primaryKey).append(" = :").append(primaryKey);
-        Query query = entityManager.createNativeQuery(queryBuilder.toString());
-        params.forEach(query::setParameter);
-        query.setParameter(primaryKey, primaryKeyValue);
+        List<String> columns = params.keySet().stream().sorted().toList();
+        checkColumns(tableName, columns, primaryKey);
+        Query query = entityManager.createNativeQuery(updateStatements.update(tableName, columns, primaryKey));
+        for (int i = 0; i < columns.size(); i++) {
+            query.setParameter(i + 1, params.get(columns.get(i)));
+        }
+        query.setParameter(columns.size() + 1, primaryKeyValue);
+        int timeoutSeconds = RequestDeadline.timeoutSeconds(0);
+        if (timeoutSeconds > 0) {
+            query.setHint(SearchGuard.QUERY_TIMEOUT, timeoutSeconds);
+        }
         query.executeUpdate();
+        metrics.patchBatch(tableName, 1);
+        tableChanged(tableName);
+    }
+
+    /**
+     * Updates many rows of a table. Rows updating the same columns share a prepared statement and are sent as one JDBC batch,
+     * and every {@code patch.chunk-size} rows are committed in a transaction of their own, so a failure leaves the chunks before it committed.
+     *
+     * @return the update count of each row, in the order of the rows
+     */
+    public Dto.BulkPatchResult patchRows(String tableName, String primaryKey, List<Dto.PatchRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            throw new IllegalArgumentException("No rows provided for update");
+        }
+        Set<String> columns = new LinkedHashSet<>();
+        for (Dto.PatchRow row : rows) {
+            if (row == null || row.key() == null || row.values() == null || row.values().isEmpty()) {
+                throw new IllegalArgumentException("Every row needs a key and at least one value");
+            }
+            columns.addAll(row.values().keySet());
+        }
+        checkColumns(tableName, columns, primaryKey);
+        int[] rowCounts = new int[rows.size()];
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int start = 0; start < rows.size(); start += Math.max(1, chunkSize)) {
+            int from = start;
+            int to = Math.min(rows.size(), start + Math.max(1, chunkSize));
+            try {
+                transaction.executeWithoutResult(status -> {
+                    entityManager.unwrap(Session.class).doWork(connection -> executeChunk(connection, tableName, primaryKey, rows, from, to, rowCounts));
+                    tableChanged(tableName);
+                });
+            } catch (RuntimeException e) {
+                if (from == 0) {
+                    throw e;
+                }
+                throw new IllegalStateException("Patch of %s failed at row %d, the %d rows before it are committed: %s".formatted(tableName, from, from, e.getMessage()), e);
+            }
+        }
+        long updated = 0;
+        for (int rowCount : rowCounts) {
+            updated += Math.max(0, rowCount);
+        }
+        return Dto.BulkPatchResult.builder().rowCounts(rowCounts).updated(updated).build();
+    }
+
+    /**
+     * @throws IllegalArgumentException when the database has no such table or columns, so the patch is refused before any row is sent
+     */
+    private void checkColumns(String tableName, Collection<String> columns, String primaryKey) {
+        tableColumns.check(tableName, columns);
+        tableColumns.check(tableName, List.of(primaryKey));
+    }
+
+    private void executeChunk(Connection connection, String tableName, String primaryKey, List<Dto.PatchRow> rows, int from, int to, int[] rowCounts) throws SQLException {
+        Map<List<String>, List<Integer>> rowsByColumns = new LinkedHashMap<>();
+        for (int i = from; i < to; i++) {
+            List<String> columns = rows.get(i).values().keySet().stream().sorted().toList();
+            rowsByColumns.computeIfAbsent(columns, c -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<List<String>, List<Integer>> group : rowsByColumns.entrySet()) {
+            List<String> columns = group.getKey();
+            String sql = updateStatements.update(tableName, columns, primaryKey);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int timeoutSeconds = RequestDeadline.timeoutSeconds(0);
+                if (timeoutSeconds > 0) {
+                    statement.setQueryTimeout(timeoutSeconds);
+                }
+                for (int index : group.getValue()) {
+                    Dto.PatchRow row = rows.get(index);
+                    for (int i = 0; i < columns.size(); i++) {
+                        statement.setObject(i + 1, row.values().get(columns.get(i)));
+                    }
+                    statement.setObject(columns.size() + 1, row.key());
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                metrics.patchBatch(tableName, counts.length);
+                for (int i = 0; i < counts.length; i++) {
+                    rowCounts[group.getValue().get(i)] = counts[i];
+                }
+            }
+            log.debug("Patched {} rows of {} with {}", group.getValue().size(), tableName, sql);
+        }
+    }
+
+    /**
+     * Listeners are told once the transaction has committed, so that a search starting after the notification reads the new rows.
+     */
+    private void tableChanged(String tableName) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tableChangeListeners.forEach(listener -> listener.tableChanged(tableName));
+                }
+            });
+        }
+        else {
+            tableChangeListeners.forEach(listener -> listener.tableChanged(tableName));
+        }
     }
 }
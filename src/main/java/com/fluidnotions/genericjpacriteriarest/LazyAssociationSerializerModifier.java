@@ -0,0 +1,70 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.util.List;
+
+/**
+ * Keeps serialization from loading associations that were not fetched with the entity. An uninitialized to-one association
+ * is written as its id (or skipped), an uninitialized collection is skipped, without a query either way.
+ * With {@link Mode#INITIALIZE} they are loaded as they are serialized, one query per row and association.
+ */
+class LazyAssociationSerializerModifier extends BeanSerializerModifier {
+
+    enum Mode {
+        ID, SKIP, INITIALIZE
+    }
+
+    private final Mode mode;
+
+    LazyAssociationSerializerModifier(Mode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+        if (mode == Mode.INITIALIZE) {
+            return beanProperties;
+        }
+        beanProperties.replaceAll(writer -> canBeLazy(writer.getType()) ? new LazyPropertyWriter(writer, mode) : writer);
+        return beanProperties;
+    }
+
+    /**
+     * Scalars are never proxies, so their writers are left as they are.
+     */
+    private static boolean canBeLazy(JavaType type) {
+        return type.isContainerType() || !(type.isPrimitive() || type.isEnumType() || type.getRawClass().getName().startsWith("java."));
+    }
+
+    private static final class LazyPropertyWriter extends BeanPropertyWriter {
+
+        private final Mode mode;
+
+        LazyPropertyWriter(BeanPropertyWriter base, Mode mode) {
+            super(base);
+            this.mode = mode;
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            Object value = get(bean);
+            if (value != null && !Hibernate.isInitialized(value)) {
+                if (mode == Mode.ID && value instanceof HibernateProxy proxy) {
+                    gen.writeFieldName(_name);
+                    prov.defaultSerializeValue(proxy.getHibernateLazyInitializer().getInternalIdentifier(), gen);
+                }
+                return;
+            }
+            super.serializeAsField(bean, gen, prov);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In memory {@link SearchResultCache}, bounded by the total size of the cached results with least-recently-used eviction.
+ * Entries expire after the time to live of their entity, or the default one. Entries that are expired or outdated by a table change
+ * are dropped when they are next read, or evicted like any other entry.
+ */
+public class LocalSearchResultCache implements SearchResultCache {
+
+    private final long maxBytes;
+    private final Duration defaultTtl;
+    private final Map<String, Duration> entityTtls;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long bytes;
+
+    /**
+     * @param entityTtls time to live by entity name, matched ignoring case
+     */
+    public LocalSearchResultCache(long maxBytes, Duration defaultTtl, Map<String, Duration> entityTtls) {
+        this.maxBytes = maxBytes;
+        this.defaultTtl = defaultTtl;
+        this.entityTtls = new LinkedHashMap<>();
+        entityTtls.forEach((entityName, ttl) -> this.entityTtls.put(entityName.toLowerCase(Locale.ROOT), ttl));
+    }
+
+    @Override
+    public byte[] get(String entityName, String key, long tablesVersion) {
+        Key cacheKey = new Key(entityName, key);
+        synchronized (entries) {
+            Entry entry = entries.get(cacheKey);
+            if (entry != null && entry.tablesVersion() == tablesVersion && entry.expiresAt() - System.nanoTime() > 0) {
+                hits.increment();
+                return entry.result();
+            }
+            if (entry != null) {
+                remove(cacheKey);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void put(String entityName, String key, long tablesVersion, byte[] result) {
+        Duration ttl = entityTtls.getOrDefault(entityName.toLowerCase(Locale.ROOT), defaultTtl);
+        if (ttl.isZero() || ttl.isNegative() || result.length > maxBytes) {
+            return;
+        }
+        Key cacheKey = new Key(entityName, key);
+        synchronized (entries) {
+            remove(cacheKey);
+            entries.put(cacheKey, new Entry(result, tablesVersion, System.nanoTime() + ttl.toNanos()));
+            bytes += result.length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().result().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private void remove(Key cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null) {
+            bytes -= removed.result().length;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    public long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private record Key(String entityName, String search) {
+    }
+
+    private record Entry(byte[] result, long tablesVersion, long expiresAt) {
+    }
+}
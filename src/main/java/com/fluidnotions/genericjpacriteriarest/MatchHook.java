@@ -0,0 +1,30 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+/**
+ * Builds the predicate of {@code like} criteria on some attributes instead of the match mode, e.g. to compare against a lowercased
+ * index column or to use a full-text operator of the database. Hooks are beans, the first one in order supporting an attribute is used.
+ * Predicates are built once per query shape and cached, so they must only depend on the arguments.
+ */
+public interface MatchHook {
+
+    boolean supports(EntityType<?> entityType, SingularAttribute<?, ?> attribute, Dto.MatchMode mode);
+
+    /**
+     * @param value the parameter the value is bound to, as returned by {@link #value(Dto.MatchMode, String)}
+     */
+    Predicate predicate(CriteriaBuilder criteriaBuilder, Root<?> root, SingularAttribute<?, ?> attribute, Dto.MatchMode mode, ParameterExpression<String> value);
+
+    /**
+     * The value bound to the parameter of the predicate, the requested value by default.
+     */
+    default String value(Dto.MatchMode mode, String value) {
+        return value;
+    }
+}
@@ -0,0 +1,105 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.springframework.lang.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves how a {@code like} criterion matches: the mode of the request, else the default configured for the attribute with
+ * {@code like.mode.<entity>.<attribute>}, else {@code like.default-mode}; and whether a {@link MatchHook} builds the predicate.
+ */
+public class MatchModes {
+
+    private static final char ESCAPE = '\\';
+
+    private final Dto.MatchMode defaultMode;
+    private final Map<EntityType<?>, Map<String, Dto.MatchMode>> attributeModes;
+    private final List<MatchHook> hooks;
+
+    /**
+     * @param attributeModes modes by {@code entity.attribute}
+     * @throws IllegalArgumentException when an entity or a mode of the configuration is not known
+     */
+    MatchModes(EntityRegistry entityRegistry, Dto.MatchMode defaultMode, Map<String, String> attributeModes, List<MatchHook> hooks) {
+        this.defaultMode = defaultMode;
+        Map<EntityType<?>, Map<String, Dto.MatchMode>> modes = new HashMap<>();
+        attributeModes.forEach((key, mode) -> {
+            int dot = key.lastIndexOf('.');
+            if (dot < 0) {
+                throw new IllegalArgumentException("Match mode '%s' is not configured as <entity>.<attribute>".formatted(key));
+            }
+            modes.computeIfAbsent(entityRegistry.entry(key.substring(0, dot)).entityType(), entityType -> new HashMap<>())
+                    .put(key.substring(dot + 1).toLowerCase(), Dto.MatchMode.of(mode));
+        });
+        modes.replaceAll((entityType, byAttribute) -> Map.copyOf(byAttribute));
+        this.attributeModes = Map.copyOf(modes);
+        this.hooks = List.copyOf(hooks);
+    }
+
+    Match match(EntityRegistry.Entry entry, SingularAttribute<?, ?> attribute, @Nullable Dto.MatchMode requested) {
+        Dto.MatchMode mode = requested;
+        if (mode == null) {
+            mode = attributeModes.getOrDefault(entry.entityType(), Map.of()).getOrDefault(attribute.getName().toLowerCase(), defaultMode);
+        }
+        for (MatchHook hook : hooks) {
+            if (hook.supports(entry.entityType(), attribute, mode)) {
+                return new Match(mode, hook);
+            }
+        }
+        return new Match(mode, null);
+    }
+
+    /**
+     * @param hook null when the mode builds the predicate
+     */
+    record Match(Dto.MatchMode mode, @Nullable MatchHook hook) {
+
+        String shape() {
+            return hook != null ? mode + "@" + hook.getClass().getName() : mode.toString();
+        }
+
+        /**
+         * Only {@code containsIgnoreCase} leaves wildcards in the value as they are, as it always has; the other modes match them literally.
+         */
+        String value(String value) {
+            if (hook != null) {
+                return hook.value(mode, value);
+            }
+            return switch (mode) {
+                case CONTAINS_IGNORE_CASE -> "%" + value.toLowerCase() + "%";
+                case CONTAINS -> "%" + escape(value) + "%";
+                case STARTS_WITH -> escape(value) + "%";
+                case STARTS_WITH_IGNORE_CASE -> escape(value.toLowerCase()) + "%";
+                case EXACT -> value;
+                case EXACT_IGNORE_CASE -> value.toLowerCase();
+            };
+        }
+
+        Predicate predicate(CriteriaBuilder criteriaBuilder, Root<?> root, SingularAttribute<?, ?> attribute, ParameterExpression<String> value) {
+            if (hook != null) {
+                return hook.predicate(criteriaBuilder, root, attribute, mode, value);
+            }
+            Path<String> path = root.get(attribute.getName());
+            return switch (mode) {
+                case CONTAINS_IGNORE_CASE -> criteriaBuilder.like(criteriaBuilder.lower(path), value);
+                case CONTAINS, STARTS_WITH -> criteriaBuilder.like(path, value, ESCAPE);
+                case STARTS_WITH_IGNORE_CASE -> criteriaBuilder.like(criteriaBuilder.lower(path), value, ESCAPE);
+                case EXACT -> criteriaBuilder.equal(path, value);
+                case EXACT_IGNORE_CASE -> criteriaBuilder.equal(criteriaBuilder.lower(path), value);
+            };
+        }
+
+        private static String escape(String value) {
+            return value.replace(String.valueOf(ESCAPE), "" + ESCAPE + ESCAPE).replace("%", ESCAPE + "%").replace("_", ESCAPE + "_");
+        }
+    }
+}
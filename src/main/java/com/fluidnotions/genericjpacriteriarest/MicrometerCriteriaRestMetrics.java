@@ -0,0 +1,123 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters of this library. Histograms and percentiles are configured as for any other meter, e.g. with
+ * {@code management.metrics.distribution.percentiles-histogram.rest.jpa.criteria.search.phase=true}.
+ * The {@code shape} tag has one value per distinct set of operators and attributes of the entity in use and can be turned off with
+ * {@code metrics.shape-tag=false}.
+ */
+public class MicrometerCriteriaRestMetrics implements CriteriaRestMetrics {
+
+    private final MeterRegistry registry;
+    private final boolean shapeTag;
+    private final Map<PhaseKey, Timer> phaseTimers = new ConcurrentHashMap<>();
+    private final Map<ShapeKey, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+    private final Map<ShapeKey, DistributionSummary> byteSummaries = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> patchBatchSummaries = new ConcurrentHashMap<>();
+
+    MicrometerCriteriaRestMetrics(MeterRegistry registry, boolean shapeTag) {
+        this.registry = registry;
+        this.shapeTag = shapeTag;
+    }
+
+    @Override
+    public void phase(String entityName, String shape, String path, String phase, long nanos) {
+        phaseTimers.computeIfAbsent(new PhaseKey(entityName, shape(shape), path, phase), key -> Timer.builder("rest.jpa.criteria.search.phase")
+                        .tags("entity", key.entityName(), "shape", key.shape(), "path", key.path(), "phase", key.phase())
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void rows(String entityName, String shape, int rows) {
+        rowSummaries.computeIfAbsent(new ShapeKey(entityName, shape(shape)), key -> DistributionSummary.builder("rest.jpa.criteria.search.rows")
+                        .tags("entity", key.entityName(), "shape", key.shape())
+                        .register(registry))
+                .record(rows);
+    }
+
+    @Override
+    public void bytes(String entityName, String shape, long bytes) {
+        byteSummaries.computeIfAbsent(new ShapeKey(entityName, shape(shape)), key -> DistributionSummary.builder("rest.jpa.criteria.search.bytes")
+                        .baseUnit("bytes")
+                        .tags("entity", key.entityName(), "shape", key.shape())
+                        .register(registry))
+                .record(bytes);
+    }
+
+    @Override
+    public void patchBatch(String tableName, int rows) {
+        patchBatchSummaries.computeIfAbsent(tableName, key -> DistributionSummary.builder("rest.jpa.criteria.patch.batch.rows")
+                        .tags("table", key)
+                        .register(registry))
+                .record(rows);
+    }
+
+    private String shape(String shape) {
+        return shapeTag ? shape : "";
+    }
+
+    /**
+     * Hit and miss counters of the caches, coalesced searches, guard rejections and the write-behind queue, read from the
+     * counters the components keep anyway.
+     */
+    static MeterBinder cacheMeters(QueryPlanCache queryPlanCache, UpdateStatements updateStatements, JpaCriteriaSearchService jpaCriteriaSearchService,
+                                   SearchGuard searchGuard, @Nullable LocalSearchResultCache searchResultCache, @Nullable WriteBehindPatchQueue writeBehindPatchQueue,
+                                   List<AsyncExecutor> asyncExecutors) {
+        return registry -> {
+            cache(registry, "query-plan", queryPlanCache, QueryPlanCache::hits, QueryPlanCache::misses);
+            Gauge.builder("rest.jpa.criteria.cache.size", queryPlanCache, QueryPlanCache::size).tag("cache", "query-plan").register(registry);
+            cache(registry, "update-statement", updateStatements, UpdateStatements::hits, UpdateStatements::misses);
+            if (searchResultCache != null) {
+                cache(registry, "search-result", searchResultCache, LocalSearchResultCache::hits, LocalSearchResultCache::misses);
+                Gauge.builder("rest.jpa.criteria.cache.size", searchResultCache, LocalSearchResultCache::bytes).tag("cache", "search-result").baseUnit("bytes").register(registry);
+            }
+            FunctionCounter.builder("rest.jpa.criteria.search.coalesced", jpaCriteriaSearchService, JpaCriteriaSearchService::coalescedSearches).register(registry);
+            FunctionCounter.builder("rest.jpa.criteria.guard.rejected", searchGuard, SearchGuard::rejected).register(registry);
+            if (writeBehindPatchQueue != null) {
+                Gauge.builder("rest.jpa.criteria.write-behind.pending", writeBehindPatchQueue, WriteBehindPatchQueue::pending).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.write-behind.enqueued", writeBehindPatchQueue, WriteBehindPatchQueue::enqueued).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.write-behind.coalesced", writeBehindPatchQueue, WriteBehindPatchQueue::coalesced).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.write-behind.rejected", writeBehindPatchQueue, WriteBehindPatchQueue::rejected).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.write-behind.failed.rows", writeBehindPatchQueue, WriteBehindPatchQueue::failedRows).register(registry);
+                FunctionTimer.builder("rest.jpa.criteria.write-behind.flush", writeBehindPatchQueue, WriteBehindPatchQueue::flushes,
+                        WriteBehindPatchQueue::totalFlushNanos, TimeUnit.NANOSECONDS).register(registry);
+            }
+            for (AsyncExecutor asyncExecutor : asyncExecutors) {
+                Gauge.builder("rest.jpa.criteria.async.active", asyncExecutor, AsyncExecutor::active).tag("pool", asyncExecutor.name()).register(registry);
+                Gauge.builder("rest.jpa.criteria.async.queued", asyncExecutor, AsyncExecutor::queued).tag("pool", asyncExecutor.name()).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.async.rejected", asyncExecutor, AsyncExecutor::rejected).tag("pool", asyncExecutor.name()).register(registry);
+                FunctionCounter.builder("rest.jpa.criteria.async.timed-out", asyncExecutor, AsyncExecutor::timedOut).tag("pool", asyncExecutor.name()).register(registry);
+            }
+        };
+    }
+
+    /**
+     * The meters are looked up by their tags rather than registered again on every search, which builds the meter id each time.
+     */
+    private record PhaseKey(String entityName, String shape, String path, String phase) {
+    }
+
+    private record ShapeKey(String entityName, String shape) {
+    }
+
+    private static <T> void cache(MeterRegistry registry, String cache, T source, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+        FunctionCounter.builder("rest.jpa.criteria.cache.hits", source, hits).tag("cache", cache).register(registry);
+        FunctionCounter.builder("rest.jpa.criteria.cache.misses", source, misses).tag("cache", cache).register(registry);
+    }
+}
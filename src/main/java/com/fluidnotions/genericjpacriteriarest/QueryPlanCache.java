@@ -0,0 +1,50 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.criteria.CriteriaQuery;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Criteria queries compiled per query shape: the entity, the result type, the projection, which operator applies to which
+ * attribute, the paging order and the aggregations. Values are never part of the shape, they are {@link jakarta.persistence.criteria.ParameterExpression}s
+ * bound on each execution, so requests that only differ in their values reuse the same query.
+ * Cached queries are never modified after they are built, which makes sharing them between sessions safe.
+ */
+public class QueryPlanCache {
+
+    private final LruCache<Shape, CriteriaQuery<?>> plans;
+
+    QueryPlanCache(int maxSize) {
+        this.plans = new LruCache<>(maxSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CriteriaQuery<T> plan(Shape shape, Supplier<CriteriaQuery<T>> compiler) {
+        return (CriteriaQuery<T>) plans.computeIfAbsent(shape, key -> compiler.get());
+    }
+
+    public long hits() {
+        return plans.hits();
+    }
+
+    public long misses() {
+        return plans.misses();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    /**
+     * The SQL projection is compared by identity, it is itself cached per (entity, projection).
+     *
+     * @param aggregate the group by attributes and aggregations of an aggregate query, null for searches
+     */
+    record Shape(Class<?> entityClass, Class<?> resultType, SqlProjection sqlProjection, List<String> criteria, String page, String aggregate) {
+    }
+}
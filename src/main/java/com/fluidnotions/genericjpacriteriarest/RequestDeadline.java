@@ -0,0 +1,49 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.QueryTimeoutException;
+
+import java.util.function.Supplier;
+
+/**
+ * The deadline of the request the current thread works for, set by {@link AsyncExecutor}. Statement timeouts are cut to the time left,
+ * so the driver cancels a statement still running when the request times out instead of letting it hold its connection. JDBC counts
+ * timeouts in whole seconds, so the time left is rounded up rather than down to no timeout at all.
+ */
+final class RequestDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    static <T> T run(long deadlineNanos, Supplier<T> work) {
+        Long enclosing = DEADLINE.get();
+        DEADLINE.set(deadlineNanos);
+        try {
+            return work.get();
+        } finally {
+            if (enclosing == null) {
+                DEADLINE.remove();
+            } else {
+                DEADLINE.set(enclosing);
+            }
+        }
+    }
+
+    /**
+     * @param timeoutMillis the timeout without a deadline, 0 for none
+     * @return the timeout cut to the time left before the deadline and rounded up to whole seconds, at least 1; 0 for none
+     * @throws QueryTimeoutException when the deadline has passed
+     */
+    static int timeoutSeconds(long timeoutMillis) {
+        Long deadline = DEADLINE.get();
+        if (deadline != null) {
+            long leftMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (leftMillis <= 0) {
+                throw new QueryTimeoutException("Request timed out before the query started");
+            }
+            timeoutMillis = timeoutMillis > 0 ? Math.min(timeoutMillis, leftMillis) : leftMillis;
+        }
+        return timeoutMillis > 0 ? (int) Math.min(Integer.MAX_VALUE, (timeoutMillis + 999) / 1000) : 0;
+    }
+}
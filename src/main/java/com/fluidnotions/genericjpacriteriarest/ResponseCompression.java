@@ -0,0 +1,91 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses search responses of at least {@code compression.min-size} bytes with zstd, when {@code com.github.luben:zstd-jni}
+ * is on the classpath and the client accepts it, or else with gzip. Smaller responses are sent as they are, as compressing
+ * them costs more than it saves. Streamed responses are not compressed here, see {@code server.compression}.
+ */
+public class ResponseCompression {
+
+    static final String GZIP = "gzip";
+    static final String ZSTD = "zstd";
+
+    private static final boolean ZSTD_PRESENT = ClassUtils.isPresent("com.github.luben.zstd.Zstd", ResponseCompression.class.getClassLoader());
+
+    private final long minSize;
+    private final int zstdLevel;
+
+    ResponseCompression(long minSize, int zstdLevel) {
+        this.minSize = minSize;
+        this.zstdLevel = zstdLevel;
+    }
+
+    /**
+     * @return the body compressed with the encoding, or as it is with a null encoding
+     */
+    Compressed compress(byte[] body, @Nullable String acceptEncoding) {
+        if (body.length < minSize || acceptEncoding == null) {
+            return new Compressed(body, null);
+        }
+        String encoding = encoding(acceptEncoding);
+        if (ZSTD.equals(encoding)) {
+            return new Compressed(Zstd.compress(body, zstdLevel), ZSTD);
+        }
+        if (GZIP.equals(encoding)) {
+            return new Compressed(gzip(body), GZIP);
+        }
+        return new Compressed(body, null);
+    }
+
+    /**
+     * zstd when accepted and available, then gzip; encodings with {@code q=0} are not accepted.
+     */
+    @Nullable
+    private static String encoding(String acceptEncoding) {
+        boolean gzip = false;
+        for (String token : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            String[] parts = StringUtils.tokenizeToStringArray(token, ";");
+            if (parts.length == 0 || (parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"))) {
+                continue;
+            }
+            String coding = parts[0].toLowerCase();
+            if (ZSTD_PRESENT && ZSTD.equals(coding)) {
+                return ZSTD;
+            }
+            gzip |= GZIP.equals(coding) || "*".equals(coding);
+        }
+        return gzip ? GZIP : null;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    record Compressed(byte[] body, @Nullable String encoding) {
+    }
+
+    /**
+     * Only loaded when zstd-jni is present.
+     */
+    private static final class Zstd {
+
+        static byte[] compress(byte[] body, int level) {
+            return com.github.luben.zstd.Zstd.compress(body, level);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A format search results are written in: JSON, or Smile and CBOR when {@code jackson-dataformat-smile} and
+ * {@code jackson-dataformat-cbor} are on the classpath. The writers compiled for an (entity, projection) are switched to the
+ * {@link JsonFactory} of the format, so every format writes the same rows with the same fields, and binary formats are never
+ * converted from JSON text.
+ */
+public final class ResponseFormat {
+
+    public static final ResponseFormat JSON = new ResponseFormat("json", MediaType.APPLICATION_JSON, null);
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private static final List<ResponseFormat> AVAILABLE = detect();
+
+    private final String name;
+    private final MediaType mediaType;
+    @Nullable
+    private final JsonFactory factory;
+
+    private ResponseFormat(String name, MediaType mediaType, @Nullable JsonFactory factory) {
+        this.name = name;
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    private static List<ResponseFormat> detect() {
+        List<ResponseFormat> formats = new ArrayList<>(List.of(JSON));
+        addIfPresent(formats, "smile", APPLICATION_SMILE, "com.fasterxml.jackson.dataformat.smile.SmileFactory");
+        addIfPresent(formats, "cbor", MediaType.APPLICATION_CBOR, "com.fasterxml.jackson.dataformat.cbor.CBORFactory");
+        return List.copyOf(formats);
+    }
+
+    private static void addIfPresent(List<ResponseFormat> formats, String name, MediaType mediaType, String factoryClassName) {
+        ClassLoader classLoader = ResponseFormat.class.getClassLoader();
+        if (ClassUtils.isPresent(factoryClassName, classLoader)) {
+            try {
+                JsonFactory factory = (JsonFactory) ClassUtils.forName(factoryClassName, classLoader).getDeclaredConstructor().newInstance();
+                formats.add(new ResponseFormat(name, mediaType, factory));
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IllegalStateException("Cannot create " + factoryClassName, e);
+            }
+        }
+    }
+
+    /**
+     * The format of the most preferred media type of an {@code Accept} header that is available, JSON without a header or for wildcards.
+     *
+     * @return null when none of the accepted media types is available
+     * @throws org.springframework.util.InvalidMimeTypeException when the header cannot be parsed
+     */
+    @Nullable
+    public static ResponseFormat negotiate(@Nullable String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> acceptedTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        // quality first, then specificity
+        MimeTypeUtils.sortBySpecificity(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() == 0) {
+                continue;
+            }
+            for (ResponseFormat format : AVAILABLE) {
+                if (acceptedType.includes(format.mediaType())) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The formats on the classpath, JSON first.
+     */
+    public static List<ResponseFormat> available() {
+        return AVAILABLE;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    public boolean binary() {
+        return factory != null;
+    }
+
+    /**
+     * The writer compiled for JSON, writing this format instead.
+     */
+    ObjectWriter writer(ObjectWriter jsonWriter) {
+        return factory != null ? jsonWriter.with(factory) : jsonWriter;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,187 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.QueryTimeoutException;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.EntityType;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits on the queries of an entity, from {@code guard.default.*} and per entity {@code guard.entity.<entity>.*}:
+ * a statement timeout, a cap on the rows a search reads when it has no smaller limit, and how many of its queries run at the same time.
+ * A query waits up to {@code guard.queue-timeout} for its turn, so one hot entity cannot take every connection of the pool.
+ * Unset or 0 means no limit.
+ */
+public class SearchGuard {
+
+    /**
+     * In seconds, as JDBC takes it; the JPA hint in milliseconds is rounded to the nearest second, so anything under 500 ms would set none.
+     */
+    static final String QUERY_TIMEOUT = HibernateHints.HINT_TIMEOUT;
+
+    private final Limits defaultLimits;
+    private final Map<EntityType<?>, Limits> entityLimits;
+    private final boolean truncate;
+    private final Duration queueTimeout;
+    private final Map<EntityType<?>, Semaphore> permits = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param truncate whether a search reading more than its max rows returns the first max rows flagged as truncated, instead of failing
+     * @throws IllegalArgumentException when an entity of the configuration is not known
+     */
+    SearchGuard(EntityRegistry entityRegistry, Limits defaultLimits, Map<String, Limits> entityLimits, boolean truncate, Duration queueTimeout) {
+        this.defaultLimits = defaultLimits;
+        Map<EntityType<?>, Limits> limits = new HashMap<>();
+        entityLimits.forEach((entityName, entity) -> limits.put(entityRegistry.entry(entityName).entityType(), entity.orElse(defaultLimits)));
+        this.entityLimits = Map.copyOf(limits);
+        this.truncate = truncate;
+        this.queueTimeout = queueTimeout;
+    }
+
+    private Limits limits(EntityRegistry.Entry entry) {
+        return entityLimits.getOrDefault(entry.entityType(), defaultLimits);
+    }
+
+    /**
+     * Runs the query work of an entity once one of its permits is free.
+     *
+     * @throws SearchRejectedException with 503 when no permit is free within the queue timeout
+     */
+    <T> T limit(EntityRegistry.Entry entry, Supplier<T> work) {
+        Integer maxConcurrency = limits(entry).maxConcurrency();
+        if (maxConcurrency == null || maxConcurrency <= 0) {
+            return work.get();
+        }
+        Semaphore semaphore = permits.computeIfAbsent(entry.entityType(), entityType -> new Semaphore(maxConcurrency, true));
+        try {
+            if (!semaphore.tryAcquire(queueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new SearchRejectedException("Too many concurrent queries on %s, try again later".formatted(entry.entityType().getName()), HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchRejectedException("Interrupted waiting to query %s".formatted(entry.entityType().getName()), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            return work.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Sets the statement timeout of the entity on the query, cut to the time left of the {@link RequestDeadline} and rounded up to seconds.
+     */
+    <T> TypedQuery<T> timeout(EntityRegistry.Entry entry, TypedQuery<T> query) {
+        Duration queryTimeout = limits(entry).queryTimeout();
+        int timeoutSeconds = RequestDeadline.timeoutSeconds(queryTimeout != null && !queryTimeout.isZero() ? Math.max(1, queryTimeout.toMillis()) : 0);
+        if (timeoutSeconds > 0) {
+            query.setHint(QUERY_TIMEOUT, timeoutSeconds);
+        }
+        return query;
+    }
+
+    /**
+     * Sets the timeout and, unless the query already reads fewer rows, has it read one row more than the max rows, so that
+     * {@link #cap(EntityRegistry.Entry, List)} can tell whether there were more.
+     */
+    <T> TypedQuery<T> maxRows(EntityRegistry.Entry entry, TypedQuery<T> query) {
+        timeout(entry, query);
+        Integer maxRows = limits(entry).maxRows();
+        if (maxRows != null && maxRows > 0 && query.getMaxResults() > maxRows) {
+            query.setMaxResults(maxRows + 1);
+        }
+        return query;
+    }
+
+    /**
+     * @return the rows, or their first max rows when truncating
+     * @throws SearchRejectedException with 422 when there are more rows than the max rows and truncating is off
+     */
+    <T> List<T> cap(EntityRegistry.Entry entry, List<T> rows) {
+        if (!truncated(entry, rows)) {
+            return rows;
+        }
+        int maxRows = limits(entry).maxRows();
+        if (!truncate) {
+            rejected.increment();
+            throw new SearchRejectedException("Search on %s matches more than %d rows, narrow the criteria or page the results".formatted(entry.entityType().getName(), maxRows), HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        return rows.subList(0, maxRows);
+    }
+
+    /**
+     * The rows of a stream within the limits of the entity. After the max rows the stream ends when truncating and fails otherwise,
+     * and once the query timeout has passed since it started, reading included, it fails, so a slow reader cannot keep the permit
+     * and the connection. Either failure aborts the response, whose status has been sent with the first rows.
+     */
+    <T> Iterator<T> stream(EntityRegistry.Entry entry, Iterator<T> rows) {
+        Limits limits = limits(entry);
+        int maxRows = limits.maxRows() != null && limits.maxRows() > 0 ? limits.maxRows() : Integer.MAX_VALUE;
+        Duration queryTimeout = limits.queryTimeout();
+        long deadline = queryTimeout != null && !queryTimeout.isZero() ? System.nanoTime() + queryTimeout.toNanos() : 0;
+        return new Iterator<>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = rows.hasNext();
+                if (hasNext && count >= maxRows) {
+                    if (truncate) {
+                        return false;
+                    }
+                    rejected.increment();
+                    throw new SearchRejectedException("Stream of %s matches more than %d rows, narrow the criteria or page the results".formatted(entry.entityType().getName(), maxRows), HttpStatus.UNPROCESSABLE_ENTITY);
+                }
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                    throw new QueryTimeoutException("Stream of %s took longer than %s".formatted(entry.entityType().getName(), queryTimeout));
+                }
+                count++;
+                return rows.next();
+            }
+        };
+    }
+
+    boolean truncated(EntityRegistry.Entry entry, List<?> rows) {
+        Integer maxRows = limits(entry).maxRows();
+        return maxRows != null && maxRows > 0 && rows.size() > maxRows;
+    }
+
+    /**
+     * Queries refused for lack of a permit, and searches failed for reading too many rows.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @param queryTimeout statement timeout, rounded up to whole seconds
+     * @param maxRows      rows a search may read
+     * @param maxConcurrency queries of the entity running at the same time
+     */
+    public record Limits(Duration queryTimeout, Integer maxRows, Integer maxConcurrency) {
+
+        Limits orElse(Limits defaults) {
+            return new Limits(queryTimeout != null ? queryTimeout : defaults.queryTimeout(),
+                    maxRows != null ? maxRows : defaults.maxRows(),
+                    maxConcurrency != null ? maxConcurrency : defaults.maxConcurrency());
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.query.criteria.JpaOrder;
+import org.hibernate.query.sqm.NullPrecedence;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Limit, offset, ordering and keyset (seek) paging for a search.
+ * In keyset mode the sort always ends on the primary key, and the continuation cursor is the sort key of the last row
+ * of a full page, so every page is a bounded index range scan no matter how deep it is. Nulls of the sort attributes
+ * sort after every value, last in ascending and first in descending order, so they can be sought past like any value.
+ */
+public class SearchPaging {
+
+    private final ObjectMapper objectMapper;
+    private final int defaultSize;
+    private final int maxSize;
+
+    SearchPaging(ObjectMapper objectMapper, int defaultSize, int maxSize) {
+        this.objectMapper = objectMapper;
+        this.defaultSize = defaultSize;
+        this.maxSize = maxSize;
+    }
+
+    Page page(EntityRegistry.Entry entry, Dto.Search search) {
+        EntityType<?> entityType = entry.entityType();
+        Integer limit = search.limit() != null ? search.limit() : (defaultSize > 0 ? defaultSize : null);
+        if (limit != null && limit < 0) {
+            throw new IllegalArgumentException("search.limit must not be negative");
+        }
+        if (maxSize > 0 && (limit == null || limit > maxSize)) {
+            limit = maxSize;
+        }
+        if (search.offset() != null && search.offset() < 0) {
+            throw new IllegalArgumentException("search.offset must not be negative");
+        }
+        boolean keyset = Boolean.TRUE.equals(search.keyset()) || search.cursor() != null;
+        List<SingularAttribute<?, ?>> sortAttributes = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        if (search.orderBy() != null) {
+            for (Dto.OrderBy orderBy : search.orderBy()) {
+                SingularAttribute<?, ?> sortAttribute = sortAttribute(entry, orderBy.field());
+                if (!sortAttributes.contains(sortAttribute)) {
+                    sortAttributes.add(sortAttribute);
+                    descending.add(orderBy.desc());
+                }
+            }
+        }
+        Object[] cursorValues = null;
+        if (keyset) {
+            if (limit == null) {
+                throw new IllegalArgumentException("keyset paging requires a limit");
+            }
+            if (!entityType.hasSingleIdAttribute()) {
+                throw new IllegalArgumentException("keyset paging requires an entity with a single id attribute");
+            }
+            SingularAttribute<?, ?> id = entityType.getId(entityType.getIdType().getJavaType());
+            if (!sortAttributes.contains(id)) {
+                sortAttributes.add(id);
+                descending.add(false);
+            }
+            if (search.cursor() != null) {
+                cursorValues = decodeCursor(search.cursor(), sortAttributes, descending);
+            }
+        }
+        return new Page(limit, keyset ? null : search.offset(), sortAttributes, descending, keyset, cursorValues, Boolean.TRUE.equals(search.count()));
+    }
+
+    private static SingularAttribute<?, ?> sortAttribute(EntityRegistry.Entry entry, String field) {
+        SingularAttribute<?, ?> attribute = entry.attribute(field);
+        if (attribute == null || attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC) {
+            throw new IllegalArgumentException("Cannot order by '%s'".formatted(field));
+        }
+        return attribute;
+    }
+
+    private String encodeCursor(Object[] values, Page page) {
+        try {
+            List<Object> cursor = new ArrayList<>();
+            cursor.add(page.signature());
+            cursor.addAll(Arrays.asList(values));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode cursor", e);
+        }
+    }
+
+    private Object[] decodeCursor(String cursor, List<SingularAttribute<?, ?>> sortAttributes, List<Boolean> descending) {
+        List<?> decoded;
+        try {
+            decoded = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), List.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (decoded.size() != sortAttributes.size() + 1 || !signature(sortAttributes, descending).equals(decoded.get(0))) {
+            throw new IllegalArgumentException("Cursor does not match the requested order");
+        }
+        Object[] values = new Object[sortAttributes.size()];
+        for (int i = 0; i < values.length; i++) {
+            JavaType type = objectMapper.constructType(sortAttributes.get(i).getJavaType());
+            values[i] = objectMapper.convertValue(decoded.get(i + 1), type);
+            if (values[i] == null && !nullable(sortAttributes.get(i))) {
+                throw new IllegalArgumentException("Invalid cursor, '%s' cannot be null".formatted(sortAttributes.get(i).getName()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Ids and primitives never are, any other attribute may be null whatever its mapping says.
+     */
+    private static boolean nullable(SingularAttribute<?, ?> attribute) {
+        return !attribute.isId() && !attribute.getJavaType().isPrimitive();
+    }
+
+    private static String signature(List<SingularAttribute<?, ?>> sortAttributes, List<Boolean> descending) {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < sortAttributes.size(); i++) {
+            parts.add(sortAttributes.get(i).getName() + (descending.get(i) ? ":desc" : ":asc"));
+        }
+        return parts.stream().collect(Collectors.joining(","));
+    }
+
+    private static Object readAttribute(Object entity, SingularAttribute<?, ?> attribute) {
+        Member member = attribute.getJavaMember();
+        try {
+            if (member instanceof Field field) {
+                field.setAccessible(true);
+                return field.get(entity);
+            }
+            Method method = (Method) member;
+            method.setAccessible(true);
+            return method.invoke(entity);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not read %s for the cursor".formatted(attribute.getName()), e);
+        }
+    }
+
+    final class Page {
+
+        private final Integer limit;
+        private final Integer offset;
+        private final List<SingularAttribute<?, ?>> sortAttributes;
+        private final List<Boolean> descending;
+        private final boolean keyset;
+        private final Object[] cursorValues;
+        private final boolean count;
+
+        private Page(Integer limit, Integer offset, List<SingularAttribute<?, ?>> sortAttributes, List<Boolean> descending, boolean keyset, Object[] cursorValues, boolean count) {
+            this.limit = limit;
+            this.offset = offset;
+            this.sortAttributes = sortAttributes;
+            this.descending = descending;
+            this.keyset = keyset;
+            this.cursorValues = cursorValues;
+            this.count = count;
+        }
+
+        boolean count() {
+            return count;
+        }
+
+        /**
+         * Paged responses are wrapped in an envelope with the cursor and total, plain searches keep returning a bare array.
+         */
+        boolean envelope() {
+            return keyset || count;
+        }
+
+        String signature() {
+            return SearchPaging.signature(sortAttributes, descending);
+        }
+
+        /**
+         * What the paging contributes to the query shape, the cursor values and the limit are bound per execution.
+         */
+        String shape() {
+            StringBuilder shape = new StringBuilder(signature()).append(keyset ? ";keyset" : "");
+            if (cursorValues != null) {
+                shape.append(";seek");
+                for (Object cursorValue : cursorValues) {
+                    shape.append(cursorValue == null ? 'n' : 'v');
+                }
+            }
+            return shape.toString();
+        }
+
+        void orderAndSeek(CriteriaQuery<?> criteriaQuery, CriteriaBuilder criteriaBuilder, Root<?> root, List<Predicate> predicates) {
+            if (cursorValues != null) {
+                predicates.add(seek(criteriaBuilder, root));
+            }
+            if (!sortAttributes.isEmpty()) {
+                List<Order> orders = new ArrayList<>();
+                for (int i = 0; i < sortAttributes.size(); i++) {
+                    Path<?> path = root.get(sortAttributes.get(i).getName());
+                    Order order = descending.get(i) ? criteriaBuilder.desc(path) : criteriaBuilder.asc(path);
+                    if (keyset && nullable(sortAttributes.get(i))) {
+                        ((JpaOrder) order).nullPrecedence(descending.get(i) ? NullPrecedence.FIRST : NullPrecedence.LAST);
+                    }
+                    orders.add(order);
+                }
+                criteriaQuery.orderBy(orders);
+            }
+        }
+
+        /**
+         * (k1, k2, id) after (:c0, :c1, :c2) expands to k1 > :c0 or (k1 = :c0 and k2 > :c1) or (k1 = :c0 and k2 = :c1 and id > :c2),
+         * with the comparison flipped for descending keys. Nulls being greater than any value, a nullable key k after :c
+         * is {@code k > :c or k is null} ascending and {@code k < :c} descending, and after a null cursor value nothing ascending
+         * and {@code k is not null} descending; a null is equal to {@code k is null}. Null cursor values are not bound.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Predicate seek(CriteriaBuilder criteriaBuilder, Root<?> root) {
+            List<ParameterExpression<Comparable>> parameters = new ArrayList<>();
+            for (int i = 0; i < sortAttributes.size(); i++) {
+                Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(sortAttributes.get(i).getJavaType());
+                parameters.add(cursorValues[i] == null ? null : criteriaBuilder.parameter((Class<Comparable>) type, "c" + i));
+            }
+            List<Predicate> alternatives = new ArrayList<>();
+            for (int i = 0; i < sortAttributes.size(); i++) {
+                Expression<Comparable> path = root.get(sortAttributes.get(i).getName());
+                Predicate after;
+                if (parameters.get(i) == null) {
+                    if (!descending.get(i)) {
+                        continue;
+                    }
+                    after = criteriaBuilder.isNotNull(path);
+                } else if (descending.get(i)) {
+                    after = criteriaBuilder.lessThan(path, parameters.get(i));
+                } else {
+                    after = criteriaBuilder.greaterThan(path, parameters.get(i));
+                    if (nullable(sortAttributes.get(i))) {
+                        after = criteriaBuilder.or(after, criteriaBuilder.isNull(path));
+                    }
+                }
+                List<Predicate> conjunction = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    Path<?> previous = root.get(sortAttributes.get(j).getName());
+                    conjunction.add(parameters.get(j) == null ? criteriaBuilder.isNull(previous) : criteriaBuilder.equal(previous, parameters.get(j)));
+                }
+                conjunction.add(after);
+                alternatives.add(criteriaBuilder.and(conjunction.toArray(new Predicate[0])));
+            }
+            return criteriaBuilder.or(alternatives.toArray(new Predicate[0]));
+        }
+
+        /**
+         * Binds the cursor and applies the limit and offset to an execution of the query.
+         */
+        void bind(TypedQuery<?> query) {
+            if (cursorValues != null) {
+                for (int i = 0; i < cursorValues.length; i++) {
+                    if (cursorValues[i] != null) {
+                        query.setParameter("c" + i, cursorValues[i]);
+                    }
+                }
+            }
+            if (offset != null) {
+                query.setFirstResult(offset);
+            }
+            if (limit != null) {
+                query.setMaxResults(limit);
+            }
+        }
+
+        /**
+         * Tuple queries also select the sort key, unless the projection already does, so that the cursor can be built without the entity.
+         */
+        void selectCursor(List<Selection<?>> selections, Root<?> root, SqlProjection sqlProjection) {
+            if (keyset) {
+                int[] cursorIndexes = cursorIndexes(sqlProjection);
+                for (int i = 0; i < cursorIndexes.length; i++) {
+                    if (cursorIndexes[i] >= sqlProjection.size()) {
+                        selections.add(root.get(sortAttributes.get(i).getName()));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Positions of the sort key in a tuple, the projection's own selection or the ones appended after it in sort order.
+         */
+        private int[] cursorIndexes(SqlProjection sqlProjection) {
+            int[] cursorIndexes = new int[sortAttributes.size()];
+            int appended = sqlProjection.size();
+            for (int i = 0; i < cursorIndexes.length; i++) {
+                cursorIndexes[i] = sqlProjection.indexOf(sortAttributes.get(i).getName());
+                if (cursorIndexes[i] < 0) {
+                    cursorIndexes[i] = appended++;
+                }
+            }
+            return cursorIndexes;
+        }
+
+        /**
+         * @param sqlProjection the projection the rows were selected with, or null for entity rows
+         */
+        String nextCursor(List<?> rows, SqlProjection sqlProjection) {
+            if (!keyset || rows.isEmpty() || rows.size() < limit) {
+                return null;
+            }
+            Object last = rows.get(rows.size() - 1);
+            int[] cursorIndexes = sqlProjection != null ? cursorIndexes(sqlProjection) : null;
+            Object[] values = new Object[sortAttributes.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = cursorIndexes != null ? ((Tuple) last).get(cursorIndexes[i]) : readAttribute(last, sortAttributes.get(i));
+            }
+            return encodeCursor(values, this);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * A search refused by a {@link SearchGuard} limit, with the status it is answered with.
+ */
+public class SearchRejectedException extends RuntimeException {
+
+    private final HttpStatus httpStatus;
+
+    public SearchRejectedException(String message, HttpStatus httpStatus) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+
+    public HttpStatus getHttpStatus() {
+        return httpStatus;
+    }
+}
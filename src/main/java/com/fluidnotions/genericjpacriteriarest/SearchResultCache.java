@@ -0,0 +1,17 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+/**
+ * Cache of serialized search responses, keyed by entity and normalized search.
+ * Every entry is stored with the {@link TableVersions version} of the tables its entity reads from, taken before the search ran;
+ * an entry is only served while the version is unchanged, so a committed patch to any of those tables invalidates it.
+ * {@link LocalSearchResultCache} keeps the entries in memory, a distributed implementation can be provided as a bean instead.
+ */
+public interface SearchResultCache {
+
+    /**
+     * @return the serialized result, or null when absent, expired or stored with another tables version
+     */
+    byte[] get(String entityName, String key, long tablesVersion);
+
+    void put(String entityName, String key, long tablesVersion, byte[] result);
+}
@@ -0,0 +1,271 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import jakarta.persistence.metamodel.EntityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Serialization engine for search results. The ObjectMapper is configured once, and the writers for every
+ * (entity class, projection) combination are compiled on first use and kept in a bounded LRU cache.
+ * Projected properties are resolved to Jackson accessors up front, so writing a row does not build intermediate trees.
+ */
+@Slf4j
+public class SearchResultSerializer {
+
+    static final String ROW_WRITER = "rest-jpa-criteria-search.row-writer";
+
+    private static final RowWriter ENTITY_ROW_WRITER = (row, gen, provider) -> provider.defaultSerializeValue(row, gen);
+
+    @JsonIgnoreProperties({"hibernateLazyInitializer"})
+    private record HibernateMixin() {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final LruCache<WriterKey, ObjectWriter> writers;
+    private final LruCache<WriterKey, Optional<SqlProjection>> sqlProjections;
+
+    public SearchResultSerializer(Jackson2ObjectMapperBuilder jacksonBuilder, int writerCacheSize) {
+        this(jacksonBuilder, writerCacheSize, LazyAssociationSerializerModifier.Mode.ID);
+    }
+
+    /**
+     * @param lazyAssociations how associations that were not loaded with an entity are written, see {@link LazyAssociationSerializerModifier}
+     */
+    SearchResultSerializer(Jackson2ObjectMapperBuilder jacksonBuilder, int writerCacheSize, LazyAssociationSerializerModifier.Mode lazyAssociations) {
+        ObjectMapper objectMapper = jacksonBuilder.build();
+        objectMapper.addMixIn(Object.class, HibernateMixin.class);
+        objectMapper.registerModule(new SimpleModule("rest-jpa-criteria-search-lazy-associations").setSerializerModifier(new LazyAssociationSerializerModifier(lazyAssociations)));
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        this.objectMapper = objectMapper;
+        this.writers = new LruCache<>(writerCacheSize);
+        this.sqlProjections = new LruCache<>(writerCacheSize);
+    }
+
+    /**
+     * Writes the rows with a writer of {@link #writerFor} or {@link SqlProjection#writer()} in the format, as an array, or as the
+     * {@code results} of the envelope when one is given.
+     */
+    byte[] write(ObjectWriter rowsWriter, List<?> rows, Dto.PagedResults envelope, ResponseFormat format) throws IOException {
+        ObjectWriter writer = format.writer(rowsWriter);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = writer.createGenerator(out)) {
+            if (envelope == null) {
+                writer.writeValue(gen, new Rows(rows));
+            } else {
+                gen.writeStartObject();
+                gen.writeFieldName("results");
+                writer.writeValue(gen, new Rows(rows));
+                if (envelope.nextCursor() != null) {
+                    gen.writeStringField("nextCursor", envelope.nextCursor());
+                }
+                if (envelope.total() != null) {
+                    gen.writeNumberField("total", envelope.total());
+                }
+                if (envelope.truncated() != null) {
+                    gen.writeBooleanField("truncated", envelope.truncated());
+                }
+                gen.writeEndObject();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public ObjectWriter writerFor(Class<?> entityClass, String[] projection) {
+        return writers.computeIfAbsent(new WriterKey(entityClass, normalizeProjection(projection)), this::createWriter);
+    }
+
+    /**
+     * Returns the projection compiled to a tuple multiselect, or null when it cannot be expressed in SQL with the same output
+     * as the entity writer (no projection, collections, Jackson customized properties, ...).
+     */
+    public SqlProjection sqlProjectionFor(EntityType<?> entityType, String[] projection) {
+        return sqlProjections.computeIfAbsent(new WriterKey(entityType.getJavaType(), normalizeProjection(projection)), key -> {
+            if (key.projection().isEmpty()) {
+                return Optional.empty();
+            }
+            ProjectionRowWriter rowWriter = compileProjection(objectMapper.constructType(key.entityClass()), key.projection());
+            SqlProjection sqlProjection = SqlProjection.compile(entityType, rowWriter.properties());
+            log.debug("Projection {} on {} expressible in SQL: {}", key.projection(), entityType.getName(), sqlProjection != null);
+            return Optional.ofNullable(sqlProjection).map(p -> p.withWriter(objectMapper.writerFor(Rows.class).withAttribute(ROW_WRITER, p)));
+        }).orElse(null);
+    }
+
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    private ObjectWriter createWriter(WriterKey key) {
+        RowWriter rowWriter = key.projection().isEmpty() ? ENTITY_ROW_WRITER : compileProjection(objectMapper.constructType(key.entityClass()), key.projection());
+        log.debug("Compiled writer for {} with projection {}", key.entityClass().getSimpleName(), key.projection());
+        return objectMapper.writerFor(Rows.class).withAttribute(ROW_WRITER, rowWriter);
+    }
+
+    private static Set<String> normalizeProjection(String[] projection) {
+        if (projection == null || projection.length == 0) {
+            return Set.of();
+        }
+        Set<String> paths = new LinkedHashSet<>();
+        for (String path : projection) {
+            if (path != null && !path.isBlank()) {
+                paths.add(path.trim().toLowerCase());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Keeps the semantics of the original tree filtering: a path is written flat under the name of its last
+     * resolved property, descending only through properties that serialize as objects, and a path ending on an object is skipped.
+     */
+    private ProjectionRowWriter compileProjection(JavaType entityType, Set<String> paths) {
+        Map<String, ProjectedProperty> properties = new LinkedHashMap<>();
+        for (String path : paths) {
+            ProjectedProperty property = resolve(entityType, path.split("\\."));
+            if (property != null) {
+                properties.put(property.fieldName(), property);
+            }
+        }
+        Map<String, Long> nullBits = new HashMap<>();
+        return new ProjectionRowWriter(properties.values().stream()
+                .map(p -> new ProjectedProperty(p.names(), p.accessors(), nullBits(p.names(), nullBits)))
+                .toArray(ProjectedProperty[]::new));
+    }
+
+    /**
+     * Several paths can stop at the same null association, which is then written once under its own name.
+     * Each distinct intermediate name gets a bit in a per-row mask so the field is not written twice; past 64 names duplicates are possible.
+     */
+    static long[] nullBits(String[] names, Map<String, Long> bitsByName) {
+        long[] bits = new long[names.length - 1];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = bitsByName.computeIfAbsent(names[i], name -> bitsByName.size() < Long.SIZE ? 1L << bitsByName.size() : 0L);
+        }
+        return bits;
+    }
+
+    private ProjectedProperty resolve(JavaType entityType, String[] segments) {
+        List<String> names = new ArrayList<>();
+        List<AnnotatedMember> accessors = new ArrayList<>();
+        JavaType currentType = entityType;
+        for (int i = 0; i < segments.length; i++) {
+            BeanPropertyDefinition property = findProperty(currentType, segments[i]);
+            if (property == null || property.getAccessor() == null) {
+                return null;
+            }
+            AnnotatedMember accessor = property.getAccessor();
+            accessor.fixAccess(true);
+            names.add(property.getName());
+            accessors.add(accessor);
+            if (!writesAsObject(accessor.getType())) {
+                return new ProjectedProperty(names.toArray(new String[0]), accessors.toArray(new AnnotatedMember[0]), null);
+            }
+            currentType = accessor.getType();
+        }
+        return null;
+    }
+
+    private BeanPropertyDefinition findProperty(JavaType type, String name) {
+        BeanDescription description = objectMapper.getSerializationConfig().introspect(type);
+        return description.findProperties().stream().filter(p -> p.getName().equalsIgnoreCase(name)).findFirst().orElse(null);
+    }
+
+    private boolean writesAsObject(JavaType type) {
+        try {
+            return objectMapper.getSerializerProviderInstance().findValueSerializer(type) instanceof BeanSerializerBase;
+        } catch (JsonMappingException e) {
+            log.debug("No serializer for projected type {}", type, e);
+            return false;
+        }
+    }
+
+    private record WriterKey(Class<?> entityClass, Set<String> projection) {
+    }
+
+    @FunctionalInterface
+    interface RowWriter {
+        void writeRow(Object row, JsonGenerator gen, SerializerProvider provider) throws IOException;
+    }
+
+    record ProjectedProperty(String[] names, AnnotatedMember[] accessors, long[] nullBits) {
+
+        String fieldName() {
+            return names[names.length - 1];
+        }
+
+        long write(Object row, JsonGenerator gen, SerializerProvider provider, long written) throws IOException {
+            Object value = row;
+            int last = accessors.length - 1;
+            for (int i = 0; i < last; i++) {
+                value = accessors[i].getValue(value);
+                if (value == null) {
+                    if ((written & nullBits[i]) == 0) {
+                        provider.defaultSerializeField(names[i], null, gen);
+                    }
+                    return written | nullBits[i];
+                }
+            }
+            provider.defaultSerializeField(names[last], accessors[last].getValue(value), gen);
+            return written;
+        }
+    }
+
+    private record ProjectionRowWriter(ProjectedProperty[] properties) implements RowWriter {
+
+        @Override
+        public void writeRow(Object row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (row == null) {
+                gen.writeNull();
+                return;
+            }
+            gen.writeStartObject(row);
+            long written = 0;
+            for (ProjectedProperty property : properties) {
+                written = property.write(row, gen, provider, written);
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Rows written as a JSON array, or as one value per line when line delimited (NDJSON).
+     */
+    @JsonSerialize(using = RowsSerializer.class)
+    record Rows(Iterable<?> rows, boolean lineDelimited) {
+
+        Rows(Iterable<?> rows) {
+            this(rows, false);
+        }
+    }
+
+    static final class RowsSerializer extends JsonSerializer<Rows> {
+
+        @Override
+        public void serialize(Rows rows, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            RowWriter rowWriter = (RowWriter) provider.getAttribute(ROW_WRITER);
+            if (rows.lineDelimited()) {
+                for (Object row : rows.rows()) {
+                    rowWriter.writeRow(row, gen, provider);
+                    gen.writeRaw('\n');
+                }
+                return;
+            }
+            gen.writeStartArray();
+            for (Object row : rows.rows()) {
+                rowWriter.writeRow(row, gen, provider);
+            }
+            gen.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import java.util.function.Supplier;
+
+/**
+ * Times the phases of one search, each from the end of the previous one, and reports them to {@link CriteriaRestMetrics}.
+ * Not thread-safe, a search runs on one thread.
+ */
+class SearchTimer {
+
+    private final CriteriaRestMetrics metrics;
+    private final String entityName;
+    private final long start = System.nanoTime();
+    private String shape = "all";
+    private String path = "entity";
+    private long last = start;
+
+    SearchTimer(CriteriaRestMetrics metrics, String entityName) {
+        this.metrics = metrics;
+        this.entityName = entityName;
+    }
+
+    /**
+     * The shape the phases are reported with, built from the criteria once they are resolved against the entity and only when
+     * the metrics are recorded.
+     */
+    void shape(Supplier<String> shape) {
+        if (metrics.enabled()) {
+            this.shape = shape.get();
+        }
+    }
+
+    void path(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Ends the phase running since the previous lap.
+     *
+     * @return the time the phase took
+     */
+    long lap(String phase) {
+        long now = System.nanoTime();
+        long elapsed = now - last;
+        metrics.phase(entityName, shape, path, phase, elapsed);
+        last = now;
+        return elapsed;
+    }
+
+    void rows(int rows) {
+        metrics.rows(entityName, shape, rows);
+    }
+
+    void bytes(long bytes) {
+        metrics.bytes(entityName, shape, bytes);
+    }
+
+    String entityName() {
+        return entityName;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,48 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL Hibernate prepares on the current thread while a capture is open, for the slow query log.
+ * Registered as {@code hibernate.session_factory.statement_inspector} with {@code slow-query.capture-sql}, unless the application
+ * has its own inspector; it then sees every statement of the persistence unit, and outside a capture it costs a thread local lookup per statement.
+ */
+class SqlCapture implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> CAPTURED = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        List<String> captured = CAPTURED.get();
+        if (captured != null) {
+            captured.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Starts recording, returns the statements recorded by the enclosing capture if there is one, to restore on {@link #stop(List)}.
+     */
+    static List<String> start() {
+        List<String> enclosing = CAPTURED.get();
+        CAPTURED.set(new ArrayList<>());
+        return enclosing;
+    }
+
+    /**
+     * @return the statements recorded since {@link #start()}
+     */
+    static List<String> stop(List<String> enclosing) {
+        List<String> captured = CAPTURED.get();
+        if (enclosing != null) {
+            enclosing.addAll(captured);
+            CAPTURED.set(enclosing);
+        } else {
+            CAPTURED.remove();
+        }
+        return captured != null ? captured : List.of();
+    }
+}
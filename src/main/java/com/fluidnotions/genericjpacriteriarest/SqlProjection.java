@@ -0,0 +1,211 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A projection compiled to a tuple multiselect: only the requested columns are selected, joining singular associations
+ * with left joins, and each tuple is written straight to the generator with the same field names as the entity writer.
+ * An association on the way to a column also selects its id, so a missing association is written as null under its own name,
+ * just like the entity writer does.
+ */
+@Slf4j
+public class SqlProjection implements SearchResultSerializer.RowWriter {
+
+    private final Column[] columns;
+    private final List<Attribute<?, ?>[]> selections;
+    private final Map<String, Integer> selectionIndexes;
+    private final ObjectWriter writer;
+
+    private SqlProjection(Column[] columns, List<Attribute<?, ?>[]> selections, Map<String, Integer> selectionIndexes, ObjectWriter writer) {
+        this.columns = columns;
+        this.selections = selections;
+        this.selectionIndexes = selectionIndexes;
+        this.writer = writer;
+    }
+
+    static SqlProjection compile(EntityType<?> entityType, SearchResultSerializer.ProjectedProperty[] properties) {
+        List<Column> columns = new ArrayList<>();
+        List<Attribute<?, ?>[]> selections = new ArrayList<>();
+        Map<String, Integer> selectionIndexes = new LinkedHashMap<>();
+        Map<String, Long> nullBits = new HashMap<>();
+        for (SearchResultSerializer.ProjectedProperty property : properties) {
+            Column column = compileColumn(entityType, property, selections, selectionIndexes, nullBits);
+            if (column == null) {
+                return null;
+            }
+            columns.add(column);
+        }
+        return columns.isEmpty() ? null : new SqlProjection(columns.toArray(new Column[0]), selections, selectionIndexes, null);
+    }
+
+    private static Column compileColumn(EntityType<?> entityType, SearchResultSerializer.ProjectedProperty property, List<Attribute<?, ?>[]> selections,
+                                        Map<String, Integer> selectionIndexes, Map<String, Long> nullBits) {
+        String[] names = property.names();
+        AnnotatedMember leaf = property.accessors()[names.length - 1];
+        if (leaf.hasAnnotation(JsonFormat.class) || leaf.hasAnnotation(JsonSerialize.class) || leaf.hasAnnotation(JsonRawValue.class) || leaf.hasAnnotation(JsonValue.class)) {
+            return null;
+        }
+        Attribute<?, ?>[] attributes = new Attribute<?, ?>[names.length];
+        int[] guardIndexes = new int[names.length - 1];
+        Arrays.fill(guardIndexes, -1);
+        ManagedType<?> managedType = entityType;
+        for (int i = 0; i < names.length; i++) {
+            Attribute<?, ?> attribute = findAttribute(managedType, names[i]);
+            if (!(attribute instanceof SingularAttribute<?, ?> singular)) {
+                return null;
+            }
+            attributes[i] = attribute;
+            if (i == names.length - 1) {
+                if (attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC) {
+                    return null;
+                }
+            }
+            else if (attribute.isAssociation() && singular.getType() instanceof EntityType<?> target && target.hasSingleIdAttribute()) {
+                Attribute<?, ?>[] guardPath = Arrays.copyOf(attributes, i + 2);
+                guardPath[i + 1] = target.getId(target.getIdType().getJavaType());
+                guardIndexes[i] = selectionIndex(guardPath, selections, selectionIndexes);
+                managedType = target;
+            }
+            else if (attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.EMBEDDED) {
+                managedType = (ManagedType<?>) singular.getType();
+            }
+            else {
+                return null;
+            }
+        }
+        int valueIndex = selectionIndex(attributes, selections, selectionIndexes);
+        return new Column(names, valueIndex, guardIndexes, SearchResultSerializer.nullBits(names, nullBits));
+    }
+
+    /**
+     * Hibernate hands out the same path instance for the same attribute path and collapses repeated selections,
+     * so every distinct path is selected exactly once and columns refer to it by position.
+     */
+    private static int selectionIndex(Attribute<?, ?>[] attributes, List<Attribute<?, ?>[]> selections, Map<String, Integer> selectionIndexes) {
+        return selectionIndexes.computeIfAbsent(key(attributes), key -> {
+            selections.add(attributes);
+            return selections.size() - 1;
+        });
+    }
+
+    private static String key(Attribute<?, ?>[] attributes) {
+        StringBuilder key = new StringBuilder();
+        for (Attribute<?, ?> attribute : attributes) {
+            key.append('.').append(attribute.getName());
+        }
+        return key.toString();
+    }
+
+    private static Attribute<?, ?> findAttribute(ManagedType<?> managedType, String name) {
+        try {
+            return managedType.getAttribute(name);
+        } catch (IllegalArgumentException e) {
+            log.debug("Projection property {} is not a persistent attribute of {}", name, managedType.getJavaType());
+            return null;
+        }
+    }
+
+    SqlProjection withWriter(ObjectWriter writer) {
+        return new SqlProjection(columns, selections, selectionIndexes, writer);
+    }
+
+    public ObjectWriter writer() {
+        return writer;
+    }
+
+    /**
+     * Number of selections made by {@link #select(Root)}.
+     */
+    int size() {
+        return selections.size();
+    }
+
+    /**
+     * Position of a root attribute in the selections, or -1 when the projection does not select it.
+     */
+    int indexOf(String attributeName) {
+        return selectionIndexes.getOrDefault("." + attributeName, -1);
+    }
+
+    /**
+     * Builds the selections on the given root, adding the left joins the columns need.
+     */
+    public List<Selection<?>> select(Root<?> root) {
+        Map<String, From<?, ?>> joins = new HashMap<>();
+        List<Selection<?>> paths = new ArrayList<>();
+        for (Attribute<?, ?>[] attributes : selections) {
+            paths.add(path(root, attributes, joins));
+        }
+        return paths;
+    }
+
+    private static Path<?> path(Root<?> root, Attribute<?, ?>[] attributes, Map<String, From<?, ?>> joins) {
+        Path<?> path = root;
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < attributes.length; i++) {
+            Attribute<?, ?> attribute = attributes[i];
+            key.append('.').append(attribute.getName());
+            if (i < attributes.length - 1 && attribute.isAssociation()) {
+                From<?, ?> from = (From<?, ?>) path;
+                path = joins.computeIfAbsent(key.toString(), k -> from.join(attribute.getName(), JoinType.LEFT));
+            }
+            else {
+                path = path.get(attribute.getName());
+            }
+        }
+        return path;
+    }
+
+    @Override
+    public void writeRow(Object row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Tuple tuple = (Tuple) row;
+        gen.writeStartObject();
+        long written = 0;
+        for (Column column : columns) {
+            written = column.write(tuple, gen, provider, written);
+        }
+        gen.writeEndObject();
+    }
+
+    private record Column(String[] names, int valueIndex, int[] guardIndexes, long[] nullBits) {
+
+        long write(Tuple tuple, JsonGenerator gen, SerializerProvider provider, long written) throws IOException {
+            for (int i = 0; i < guardIndexes.length; i++) {
+                if (guardIndexes[i] >= 0 && tuple.get(guardIndexes[i]) == null) {
+                    if ((written & nullBits[i]) == 0) {
+                        provider.defaultSerializeField(names[i], null, gen);
+                    }
+                    return written | nullBits[i];
+                }
+            }
+            provider.defaultSerializeField(names[names.length - 1], tuple.get(valueIndex), gen);
+            return written;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+/**
+ * Notified after a write through this library to a table has been committed.
+ */
+@FunctionalInterface
+public interface TableChangeListener {
+
+    void tableChanged(String tableName);
+}
@@ -0,0 +1,75 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column names of the tables patched through this library, read once per table from the JDBC {@link DatabaseMetaData}
+ * and compared without case, so a patch naming a table or column that does not exist is refused before it is sent or queued.
+ * Tables that are not found are looked up again on the next patch.
+ */
+public class TableColumns {
+
+    private final DataSource dataSource;
+    private final Map<String, Set<String>> columnsByTable = new ConcurrentHashMap<>();
+
+    TableColumns(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the table does not exist, or one of the columns is not a column of it
+     */
+    public void check(String table, Collection<String> columns) {
+        Set<String> known = columnsByTable.get(table.toLowerCase(Locale.ROOT));
+        if (known == null) {
+            known = read(table);
+            if (known.isEmpty()) {
+                throw new IllegalArgumentException("Unknown table '%s'".formatted(table));
+            }
+            columnsByTable.put(table.toLowerCase(Locale.ROOT), known);
+        }
+        for (String column : columns) {
+            if (!known.contains(column.toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("Unknown column '%s' of table '%s'".formatted(column, table));
+            }
+        }
+    }
+
+    private Set<String> read(String qualifiedTable) {
+        int dot = qualifiedTable.lastIndexOf('.');
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String schema = dot < 0 ? null : pattern(metaData, qualifiedTable.substring(0, dot));
+            String table = pattern(metaData, qualifiedTable.substring(dot + 1));
+            Set<String> columns = new HashSet<>();
+            try (ResultSet resultSet = metaData.getColumns(null, schema, table, null)) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+                }
+            }
+            return columns;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read the columns of %s: %s".formatted(qualifiedTable, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * The name in the case the database stores unquoted identifiers in, with the {@code _} wildcard of metadata patterns escaped.
+     */
+    private static String pattern(DatabaseMetaData metaData, String name) throws SQLException {
+        String stored = metaData.storesUpperCaseIdentifiers() ? name.toUpperCase(Locale.ROOT)
+                : metaData.storesLowerCaseIdentifiers() ? name.toLowerCase(Locale.ROOT) : name;
+        String escape = metaData.getSearchStringEscape();
+        return escape == null || escape.isEmpty() ? stored : stored.replace("_", escape + "_");
+    }
+}
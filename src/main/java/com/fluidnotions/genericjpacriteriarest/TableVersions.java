@@ -0,0 +1,40 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A change counter per table, incremented on every committed write through this library.
+ * The version of a set of tables is the sum of their counters, so it changes whenever one of them is written to.
+ */
+public class TableVersions implements TableChangeListener {
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public void tableChanged(String tableName) {
+        versions.computeIfAbsent(normalize(tableName), table -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long version(Collection<String> tableNames) {
+        long version = 0;
+        for (String tableName : tableNames) {
+            AtomicLong counter = versions.get(tableName);
+            if (counter != null) {
+                version += counter.get();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Table names are compared without schema, quotes and case, as the patch endpoint and the mapping may spell them differently.
+     */
+    static String normalize(String tableName) {
+        String table = tableName.substring(tableName.lastIndexOf('.') + 1);
+        return table.replace("\"", "").replace("`", "").replace("[", "").replace("]", "").toLowerCase(Locale.ROOT);
+    }
+}
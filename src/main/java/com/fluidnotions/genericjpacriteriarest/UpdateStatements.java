@@ -0,0 +1,59 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * SQL text of the patch updates, cached by (table, sorted columns, primary key column).
+ * Table and column names come from the request and cannot be bound as parameters, so they are checked to be plain,
+ * optionally schema qualified, identifiers before they go into a statement.
+ */
+public class UpdateStatements {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+
+    private final LruCache<Key, String> statements;
+
+    UpdateStatements(int cacheSize) {
+        this.statements = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * Returns {@code UPDATE table SET c1 = ?, c2 = ? WHERE pk = ?}, the value parameters in the order of the given columns
+     * followed by the primary key.
+     *
+     * @param columns the updated columns, sorted so that rows updating the same columns share the statement
+     * @throws IllegalArgumentException when a name is not a valid identifier
+     */
+    public String update(String table, List<String> columns, String primaryKey) {
+        return statements.computeIfAbsent(new Key(table, columns, primaryKey), key -> {
+            validate(table);
+            validate(primaryKey);
+            StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+            for (String column : columns) {
+                validate(column);
+                sql.append(column).append(" = ?, ");
+            }
+            sql.setLength(sql.length() - 2);
+            sql.append(" WHERE ").append(primaryKey).append(" = ?");
+            return sql.toString();
+        });
+    }
+
+    private static void validate(String identifier) {
+        if (identifier == null || !IDENTIFIER.matcher(identifier).matches()) {
+            throw new IllegalArgumentException("Invalid identifier '%s'".formatted(identifier));
+        }
+    }
+
+    public long hits() {
+        return statements.hits();
+    }
+
+    public long misses() {
+        return statements.misses();
+    }
+
+    private record Key(String table, List<String> columns, String primaryKey) {
+    }
+}
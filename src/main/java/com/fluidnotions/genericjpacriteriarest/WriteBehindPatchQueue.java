@@ -0,0 +1,299 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous mode of the single-row patch. Patches are held per (table, primary key column, key) in a bounded, striped
+ * in-memory queue, where a later patch of a column overwrites the earlier one, and a single background thread writes the
+ * pending rows with {@link JpaPatchService#patchRows} every {@code write-behind.flush-interval}, or sooner once
+ * {@code write-behind.flush-size} rows are pending.
+ * <p>
+ * When the queue is full a patch of a new row waits up to {@code write-behind.offer-timeout} for a flush to make room,
+ * then it is rejected. Patches already queued are written when the application shuts down. Table and column names are
+ * checked against the database before a patch is queued. When the batch of a flush fails its rows are written again
+ * one at a time, so only the rows that fail on their own are logged and dropped. Searches do not see a patch before it is flushed.
+ */
+@Slf4j
+public class WriteBehindPatchQueue implements AutoCloseable {
+
+    private final JpaPatchService jpaPatchService;
+    private final UpdateStatements updateStatements;
+    private final TableColumns tableColumns;
+    private final Stripe[] stripes;
+    private final int stripeCapacity;
+    private final int flushSize;
+    private final Duration offerTimeout;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean closed;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    WriteBehindPatchQueue(JpaPatchService jpaPatchService, UpdateStatements updateStatements, TableColumns tableColumns, int stripes, int maxPendingRows, int flushSize, Duration flushInterval, Duration offerTimeout) {
+        this.jpaPatchService = jpaPatchService;
+        this.updateStatements = updateStatements;
+        this.tableColumns = tableColumns;
+        this.stripes = new Stripe[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeCapacity = Math.max(1, maxPendingRows / this.stripes.length);
+        this.flushSize = Math.max(1, flushSize);
+        this.offerTimeout = offerTimeout;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("patch-write-behind-");
+        threadFactory.setDaemon(true);
+        this.flusher = new ScheduledThreadPoolExecutor(1, threadFactory);
+        this.flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the patch of a row, merged into the patch of the same row still pending.
+     *
+     * @throws IllegalArgumentException   when there are no values, or a name is not a valid identifier or not a column of the table
+     * @throws RejectedExecutionException when the queue is full for longer than the offer timeout, or closed
+     */
+    public void enqueue(String tableName, Map<String, Object> params, String primaryKey, Object primaryKeyValue) {
+        if (params == null || params.isEmpty()) {
+            throw new IllegalArgumentException("No parameters provided for update");
+        }
+        if (primaryKeyValue == null) {
+            throw new IllegalArgumentException("No primary key value provided for update");
+        }
+        // fail now rather than in the background flush
+        List<String> columns = params.keySet().stream().sorted().toList();
+        updateStatements.update(tableName, columns, primaryKey);
+        tableColumns.check(tableName, columns);
+        tableColumns.check(tableName, List.of(primaryKey));
+        RowKey rowKey = new RowKey(new Target(tableName, primaryKey), primaryKeyValue);
+        Stripe stripe = stripes[Math.floorMod(rowKey.hashCode(), stripes.length)];
+        boolean newRow;
+        stripe.lock.lock();
+        try {
+            long waitNanos = offerTimeout.toNanos();
+            while (!closed && !stripe.rows.containsKey(rowKey) && stripe.rows.size() >= stripeCapacity) {
+                requestFlush();
+                if (waitNanos <= 0) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Patch queue is full");
+                }
+                waitNanos = stripe.notFull.awaitNanos(waitNanos);
+            }
+            if (closed) {
+                rejected.increment();
+                throw new RejectedExecutionException("Patch queue is closed");
+            }
+            Map<String, Object> values = stripe.rows.get(rowKey);
+            newRow = values == null;
+            if (newRow) {
+                stripe.rows.put(rowKey, new LinkedHashMap<>(params));
+            } else {
+                values.putAll(params);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new RejectedExecutionException("Interrupted waiting for room in the patch queue", e);
+        } finally {
+            stripe.lock.unlock();
+        }
+        enqueued.increment();
+        if (!newRow) {
+            coalesced.increment();
+        } else if (pending.incrementAndGet() >= flushSize) {
+            requestFlush();
+        }
+    }
+
+    private void requestFlush() {
+        if (!closed && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes everything pending, one {@link JpaPatchService#patchRows} per (table, primary key column).
+     * Only ever runs on the flusher thread, or on the closing thread once the flusher has stopped, so the patches of a row are written in order.
+     */
+    private void flush() {
+        flushRequested.set(false);
+        Map<Target, List<Dto.PatchRow>> rowsByTarget = new LinkedHashMap<>();
+        for (Stripe stripe : stripes) {
+            Map<RowKey, Map<String, Object>> rows;
+            stripe.lock.lock();
+            try {
+                if (stripe.rows.isEmpty()) {
+                    continue;
+                }
+                rows = stripe.rows;
+                stripe.rows = new LinkedHashMap<>();
+                stripe.notFull.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+            pending.addAndGet(-rows.size());
+            rows.forEach((rowKey, values) -> rowsByTarget.computeIfAbsent(rowKey.target(), t -> new ArrayList<>())
+                    .add(Dto.PatchRow.builder().key(rowKey.key()).values(values).build()));
+        }
+        rowsByTarget.forEach(this::write);
+    }
+
+    private void write(Target target, List<Dto.PatchRow> rows) {
+        long start = System.nanoTime();
+        try {
+            jpaPatchService.patchRows(target.tableName(), target.primaryKey(), rows);
+            flushedRows.add(rows.size());
+        } catch (RuntimeException e) {
+            if (rows.size() == 1) {
+                failedRows.increment();
+                log.error("Write-behind patch of {} {} = {} failed, dropped", target.tableName(), target.primaryKey(), rows.get(0).key(), e);
+            } else {
+                log.warn("Write-behind patch of {} rows of {} failed, writing them one at a time: {}", rows.size(), target.tableName(), e.getMessage());
+                writeOneByOne(target, rows);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            flushes.increment();
+            flushNanos.add(elapsed);
+            maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Chunks committed before the failure are written again, which sets the same values.
+     */
+    private void writeOneByOne(Target target, List<Dto.PatchRow> rows) {
+        for (Dto.PatchRow row : rows) {
+            try {
+                jpaPatchService.patchRows(target.tableName(), target.primaryKey(), List.of(row));
+                flushedRows.increment();
+            } catch (RuntimeException e) {
+                failedRows.increment();
+                log.error("Write-behind patch of {} {} = {} failed, dropped", target.tableName(), target.primaryKey(), row.key(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting patches and writes the ones still pending before returning.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.notFull.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Write-behind flush did not complete in time on shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.debug("Write-behind queue closed, {} patches into {} rows", enqueued(), flushedRows());
+    }
+
+    /**
+     * Rows waiting for a flush.
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    public long enqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * Patches merged into a pending row instead of adding one.
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Share of the patches that did not cost a row update of their own.
+     */
+    public double coalescingRatio() {
+        long enqueued = enqueued();
+        return enqueued == 0 ? 0 : (double) coalesced() / enqueued;
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public long flushedRows() {
+        return flushedRows.sum();
+    }
+
+    public long failedRows() {
+        return failedRows.sum();
+    }
+
+    /**
+     * Number of {@link JpaPatchService#patchRows} calls, one per (table, primary key column) of each flush.
+     */
+    public long flushes() {
+        return flushes.sum();
+    }
+
+    public Duration averageFlushLatency() {
+        long flushes = flushes();
+        return Duration.ofNanos(flushes == 0 ? 0 : flushNanos.sum() / flushes);
+    }
+
+    public Duration maxFlushLatency() {
+        return Duration.ofNanos(maxFlushNanos.get());
+    }
+
+    double totalFlushNanos() {
+        return flushNanos.sum();
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private Map<RowKey, Map<String, Object>> rows = new LinkedHashMap<>();
+    }
+
+    private record Target(String tableName, String primaryKey) {
+    }
+
+    private record RowKey(Target target, Object key) {
+    }
+}
@@ -0,0 +1,122 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.stream.LongStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Aggregations on H2: grouped rows computed by the database under the where criteria, and 400 for attributes that are not
+ * whitelisted or functions that do not apply to them.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.aggregate.attributes.TalliedOrder=status,amount,quantity"})
+@AutoConfigureMockMvc
+class AggregationTest extends H2TestSupport {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 6).mapToObj(id -> new TalliedOrder(id, id <= 4 ? "OPEN" : "CLOSED", id * 10, (int) id, "note-" + id)).toList());
+    }
+
+    @Test
+    void aggregatesEachGroup() throws Exception {
+        aggregate("""
+                {"groupBy": ["status"], "aggregations": [{"function": "count"}, {"function": "sum", "field": "amount"},
+                 {"function": "avg", "field": "quantity"}, {"function": "max", "field": "quantity", "alias": "top"}]}""")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value("CLOSED"))
+                .andExpect(jsonPath("$[0].count").value(2))
+                .andExpect(jsonPath("$[0].sumAmount").value(110))
+                .andExpect(jsonPath("$[0].avgQuantity").value(5.5))
+                .andExpect(jsonPath("$[0].top").value(6))
+                .andExpect(jsonPath("$[1].status").value("OPEN"))
+                .andExpect(jsonPath("$[1].count").value(4))
+                .andExpect(jsonPath("$[1].sumAmount").value(100))
+                .andExpect(jsonPath("$[1].avgQuantity").value(2.5))
+                .andExpect(jsonPath("$[1].top").value(4));
+    }
+
+    @Test
+    void aggregatesTheRowsMatchingTheCriteria() throws Exception {
+        aggregate("""
+                {"where": {"gt": {"quantity": 2}}, "aggregations": [{"function": "count"}, {"function": "countDistinct", "field": "status"},
+                 {"function": "min", "field": "amount"}]}""")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].count").value(4))
+                .andExpect(jsonPath("$[0].countDistinctStatus").value(2))
+                .andExpect(jsonPath("$[0].minAmount").value(30));
+    }
+
+    @Test
+    void answersInvalidAggregationsWithBadRequest() throws Exception {
+        aggregate("{\"aggregations\": [{\"function\": \"max\", \"field\": \"note\"}]}").andExpect(status().isBadRequest());
+        aggregate("{\"groupBy\": [\"note\"], \"aggregations\": [{\"function\": \"count\"}]}").andExpect(status().isBadRequest());
+        aggregate("{\"aggregations\": [{\"function\": \"sum\", \"field\": \"status\"}]}").andExpect(status().isBadRequest());
+        aggregate("{\"aggregations\": [{\"function\": \"count\"}, {\"function\": \"count\"}]}").andExpect(status().isBadRequest());
+        mockMvc.perform(post("/aggregate/MissingEntity").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private ResultActions aggregate(String aggregate) throws Exception {
+        return mockMvc.perform(post("/aggregate/TalliedOrder").contentType(MediaType.APPLICATION_JSON).content(aggregate));
+    }
+
+    @Entity(name = "TalliedOrder")
+    @Table(name = "tallied_order")
+    static class TalliedOrder {
+        @Id
+        private Long id;
+        private String status;
+        private Long amount;
+        private Integer quantity;
+        private String note;
+
+        protected TalliedOrder() {
+        }
+
+        TalliedOrder(Long id, String status, Long amount, Integer quantity, String note) {
+            this.id = id;
+            this.status = status;
+            this.amount = amount;
+            this.quantity = quantity;
+            this.note = note;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public Long getAmount() {
+            return amount;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public String getNote() {
+            return note;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Statements run by entity searches over an order, its customer and the customer's address on H2: associations a search does not
+ * ask for are written as their id or skipped without a query, and the associations on projected dotted paths are fetched with the
+ * orders in the one search query.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false", "spring.jpa.properties.hibernate.generate_statistics=true",
+        "rest-jpa-criteria-search.sql-projection.enabled=false"})
+class AssociationFetchTest extends H2TestSupport {
+
+    private static final String ENTITY = "FetchedOrder";
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void seed() {
+        FetchedAddress leeds = new FetchedAddress(1L, "Leeds");
+        FetchedAddress york = new FetchedAddress(2L, "York");
+        FetchedCustomer ann = new FetchedCustomer(1L, "ann", leeds);
+        FetchedCustomer bob = new FetchedCustomer(2L, "bob", york);
+        FetchedOrder first = new FetchedOrder(1L, "order-1", ann);
+        FetchedOrder second = new FetchedOrder(2L, "order-2", bob);
+        FetchedOrder third = new FetchedOrder(3L, "order-3", ann);
+        seedOnce(List.of(leeds, york, ann, bob, first, second, third, new FetchedLine(1L, "pen", first), new FetchedLine(2L, "ink", first),
+                new FetchedLine(3L, "pad", second)));
+    }
+
+    @Test
+    void writesUnrequestedAssociationsWithoutAQuery() throws Exception {
+        Statistics statistics = statistics();
+
+        JsonNode rows = search(null);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(3, rows.size());
+        for (JsonNode row : rows) {
+            assertEquals(row.get("id").asLong() == 2 ? 2 : 1, row.get("customer").asLong(), row.toString());
+            assertFalse(row.has("lines"), row.toString());
+        }
+    }
+
+    @Test
+    void fetchesTheAssociationsOfProjectedPathsInOneQuery() throws Exception {
+        Statistics statistics = statistics();
+
+        JsonNode rows = search(new String[]{"id", "number", "customer.name", "customer.address.city"});
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(List.of("Leeds", "York", "Leeds"), rows.findValuesAsText("city"));
+        assertEquals(List.of("ann", "bob", "ann"), rows.findValuesAsText("name"));
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private JsonNode search(String[] projection) throws Exception {
+        Dto.Search search = Dto.Search.builder()
+                .where(Dto.Where.builder().like(Map.of("number", "order")).build())
+                .projection(projection)
+                .orderBy(List.of(Dto.OrderBy.builder().field("id").build()))
+                .build();
+        return objectMapper.readTree(jpaCriteriaSearchService.searchAndSerialize(ENTITY, search));
+    }
+
+    @Entity(name = "FetchedAddress")
+    @Table(name = "fetched_address")
+    static class FetchedAddress {
+        @Id
+        private Long id;
+        private String city;
+
+        protected FetchedAddress() {
+        }
+
+        FetchedAddress(Long id, String city) {
+            this.id = id;
+            this.city = city;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getCity() {
+            return city;
+        }
+    }
+
+    @Entity(name = "FetchedCustomer")
+    @Table(name = "fetched_customer")
+    static class FetchedCustomer {
+        @Id
+        private Long id;
+        private String name;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private FetchedAddress address;
+
+        protected FetchedCustomer() {
+        }
+
+        FetchedCustomer(Long id, String name, FetchedAddress address) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FetchedAddress getAddress() {
+            return address;
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "fetched_order")
+    static class FetchedOrder {
+        @Id
+        private Long id;
+        private String number;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private FetchedCustomer customer;
+        @OneToMany(mappedBy = "order")
+        private List<FetchedLine> lines;
+
+        protected FetchedOrder() {
+        }
+
+        FetchedOrder(Long id, String number, FetchedCustomer customer) {
+            this.id = id;
+            this.number = number;
+            this.customer = customer;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public FetchedCustomer getCustomer() {
+            return customer;
+        }
+
+        public List<FetchedLine> getLines() {
+            return lines;
+        }
+    }
+
+    @Entity(name = "FetchedLine")
+    @Table(name = "fetched_line")
+    static class FetchedLine {
+        @Id
+        private Long id;
+        private String product;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private FetchedOrder order;
+
+        protected FetchedLine() {
+        }
+
+        FetchedLine(Long id, String product, FetchedOrder order) {
+            this.id = id;
+            this.product = product;
+            this.order = order;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getProduct() {
+            return product;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The async controllers on H2 with one search thread and no queue: searches answered after an async dispatch, 504 past the
+ * request timeout with the statement cancelled, 503 while the search thread is busy, and patches running on their own executor
+ * meanwhile.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false", "rest-jpa-criteria-search.async.enabled=true",
+        "rest-jpa-criteria-search.async.search.max-concurrency=1", "rest-jpa-criteria-search.async.search.queue-capacity=0",
+        "rest-jpa-criteria-search.async.search.timeout=1500ms"})
+@AutoConfigureMockMvc
+class AsyncControllerTest extends H2TestSupport {
+
+    private static final String SLOW_SEARCH = "{\"where\": {\"like\": {\"name\": \"none\"}}}";
+
+    @Autowired
+    private List<AsyncExecutor> asyncExecutors;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 3).mapToObj(id -> new AsyncItem(id, "item-" + id)).toList());
+    }
+
+    @Test
+    void answersSearchesAfterAnAsyncDispatch() throws Exception {
+        MvcResult started = search("AsyncItem", "{\"orderBy\": [{\"field\": \"id\"}]}");
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(1, 2, 3)));
+    }
+
+    @Test
+    void answersGatewayTimeoutAndCancelsTheStatementPastTheTimeout() throws Exception {
+        MvcResult started = search("DeadlineItem", SLOW_SEARCH);
+
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isGatewayTimeout());
+        awaitIdle(searchExecutor());
+    }
+
+    @Test
+    void answersServiceUnavailableWhileTheSearchThreadIsBusyAndPatchesMeanwhile() throws Exception {
+        MvcResult slow = search("DeadlineItem", SLOW_SEARCH);
+
+        mockMvc.perform(asyncDispatch(search("AsyncItem", "{}"))).andExpect(status().isServiceUnavailable());
+        MvcResult patched = mockMvc.perform(patch("/patch/async_item/id/2").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"patched\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(patched)).andExpect(status().isNoContent());
+        assertEquals("patched", jdbcTemplate.queryForObject("select name from async_item where id = 2", String.class));
+        assertEquals(1, searchExecutor().active());
+
+        mockMvc.perform(asyncDispatch(slow)).andExpect(status().isGatewayTimeout());
+        awaitIdle(searchExecutor());
+        assertTrue(searchExecutor().rejected() > 0);
+    }
+
+    private MvcResult search(String entity, String search) throws Exception {
+        return mockMvc.perform(post("/search/" + entity).contentType(MediaType.APPLICATION_JSON).content(search))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private AsyncExecutor searchExecutor() {
+        return asyncExecutors.stream().filter(executor -> executor.name().equals("search")).findFirst().orElseThrow();
+    }
+
+    /**
+     * The statement of a search answered with 504 must be cancelled by its timeout, or it would hold the thread for good.
+     */
+    private static void awaitIdle(AsyncExecutor executor) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (executor.active() > 0) {
+            assertTrue(System.nanoTime() < deadline, "statement still running after its deadline");
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    @Entity(name = "AsyncItem")
+    @Table(name = "async_item")
+    static class AsyncItem {
+        @Id
+        private Long id;
+        private String name;
+
+        protected AsyncItem() {
+        }
+
+        AsyncItem(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Billions of rows computed by H2, so a search matching none of them runs until its statement is cancelled.
+     */
+    @Entity(name = "DeadlineItem")
+    @Immutable
+    @Subselect("select x as id, concat('item-', x) as name from system_range(1, 10000000000)")
+    static class DeadlineItem {
+        @Id
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
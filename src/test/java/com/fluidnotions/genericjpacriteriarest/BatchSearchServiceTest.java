@@ -0,0 +1,103 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batch searches on H2: each search answered under its name, failures kept to their own search, and searches beyond the bounded
+ * queue failed instead of piling up.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.batch.max-concurrency=1", "rest-jpa-criteria-search.batch.queue-capacity=1"})
+class BatchSearchServiceTest extends H2TestSupport {
+
+    private static final String ENTITY = "BatchedItem";
+
+    @Autowired
+    private BatchSearchService batchSearchService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 3).mapToObj(id -> new BatchedItem(id, "item-" + id)).toList());
+    }
+
+    @Test
+    void answersEverySearchUnderItsName() throws IOException {
+        Map<String, Dto.BatchSearch> searches = new LinkedHashMap<>();
+        searches.put("first", new Dto.BatchSearch(ENTITY, Dto.Search.builder().where(Dto.Where.builder().equalsString(Map.of("name", "item-1")).build()).build()));
+        searches.put("unknown", new Dto.BatchSearch("MissingEntity", Dto.Search.builder().build()));
+
+        JsonNode batch = run(searches);
+
+        assertEquals(1, batch.get("first").size());
+        assertEquals(1, batch.get("first").get(0).get("id").asLong());
+        assertTrue(batch.get("unknown").hasNonNull("error"));
+    }
+
+    @Test
+    void failsTheSearchesBeyondTheQueue() throws IOException {
+        Map<String, Dto.BatchSearch> searches = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            searches.put("search-" + i, new Dto.BatchSearch(ENTITY, Dto.Search.builder().build()));
+        }
+
+        JsonNode batch = run(searches);
+
+        assertEquals(20, batch.size());
+        long rejected = 0;
+        for (JsonNode result : batch) {
+            if (result.isObject()) {
+                assertTrue(result.get("error").asText().startsWith("Too many batch requests"), result.toString());
+                rejected++;
+            } else {
+                assertEquals(3, result.size());
+            }
+        }
+        assertTrue(rejected > 0 && rejected < 20, "rejected " + rejected);
+    }
+
+    private JsonNode run(Map<String, Dto.BatchSearch> searches) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchSearchService.batchSearch(searches).writeTo(out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "batched_item")
+    static class BatchedItem {
+        @Id
+        private Long id;
+        private String name;
+
+        protected BatchedItem() {
+        }
+
+        BatchedItem(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Bulk patches on H2 in chunks of two rows: the update count of every row, rows of different columns in one request, and
+ * the requests answered with 400.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.patch.chunk-size=2"})
+@AutoConfigureMockMvc
+class BulkPatchTest extends H2TestSupport {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 5).mapToObj(id -> new BulkItem(id, "item-" + id, 0)).toList());
+    }
+
+    @Test
+    void answersTheUpdateCountOfEveryRow() throws Exception {
+        mockMvc.perform(patch("/patch/bulk_item/id").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"key": 1, "values": {"name": "one"}},
+                         {"key": 2, "values": {"quantity": 2, "name": "two"}},
+                         {"key": 99, "values": {"name": "missing"}},
+                         {"key": 3, "values": {"name": "three"}},
+                         {"key": 4, "values": {"name": "four", "quantity": 4}}]"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowCounts").value(contains(1, 1, 0, 1, 1)))
+                .andExpect(jsonPath("$.updated").value(4));
+
+        assertEquals(List.of("one", "two", "three", "four", "item-5"), jdbcTemplate.queryForList("select name from bulk_item order by id", String.class));
+        assertEquals(List.of(0, 2, 0, 4, 0), jdbcTemplate.queryForList("select quantity from bulk_item order by id", Integer.class));
+    }
+
+    @Test
+    void answersInvalidPatchesWithBadRequest() throws Exception {
+        mockMvc.perform(patch("/patch/bulk_item/id").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/patch/bulk_item/id").contentType(MediaType.APPLICATION_JSON).content("[{\"key\": 5, \"values\": {}}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/patch/bulk_item/id").contentType(MediaType.APPLICATION_JSON).content("[{\"key\": 5, \"values\": {\"name; drop table bulk_item\": \"x\"}}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/patch/bulk_item/id").contentType(MediaType.APPLICATION_JSON).content("[{\"key\": 5, \"values\": {\"colour\": \"red\"}}]"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals("item-5", jdbcTemplate.queryForObject("select name from bulk_item where id = 5", String.class));
+    }
+
+    @Entity(name = "BulkItem")
+    @Table(name = "bulk_item")
+    static class BulkItem {
+        @Id
+        private Long id;
+        private String name;
+        private int quantity;
+
+        protected BulkItem() {
+        }
+
+        BulkItem(Long id, String name, int quantity) {
+            this.id = id;
+            this.name = name;
+            this.quantity = quantity;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+}
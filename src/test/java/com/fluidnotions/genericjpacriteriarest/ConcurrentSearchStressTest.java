@@ -0,0 +1,172 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads searching (entity and SQL projection) while others patch rows, all through the shared EntityManager.
+ */
+@SpringBootTest(properties = "spring.jpa.open-in-view=false")
+class ConcurrentSearchStressTest extends H2TestSupport {
+
+    private static final int OWNERS = 10;
+    private static final int ITEMS_PER_OWNER = 20;
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 100;
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private JpaPatchService jpaPatchService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, Long> ownerIds = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void seed() {
+        List<Object> rows = new ArrayList<>();
+        for (long o = 0; o < OWNERS; o++) {
+            StressOwner owner = new StressOwner("owner-" + o);
+            rows.add(owner);
+            for (int i = 0; i < ITEMS_PER_OWNER; i++) {
+                rows.add(new StressItem("item-" + o + "-" + i, o, owner));
+            }
+        }
+        seedOnce(rows);
+        transactionTemplate.executeWithoutResult(status -> entityManager.createQuery("select o from StressOwner o", StressOwner.class).getResultList()
+                .forEach(owner -> ownerIds.put(Long.parseLong(owner.getName().substring("owner-".length())), owner.getId())));
+    }
+
+    @Test
+    void concurrentSearchesReturnConsistentResults() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        long bucket = random.nextInt(OWNERS);
+                        if (thread % 4 == 3) {
+                            long id = random.nextLong(1, OWNERS * ITEMS_PER_OWNER + 1);
+                            jpaPatchService.patchTable("stress_item", Map.of("note", "patched-" + thread + "-" + i), "id", id);
+                            continue;
+                        }
+                        String[] projection = thread % 2 == 0 ? new String[]{"id", "bucket", "owner.name"} : null;
+                        var where = Dto.Where.builder().equalsLong(Map.of("bucket", bucket)).build();
+                        String json = jpaCriteriaSearchService.searchAndSerialize("stressitem", Dto.Search.builder().where(where).projection(projection).build());
+                        assertRows(readTree(json), bucket, ownerIds.get(bucket));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Projected rows have the owner name, whole entities their lazy owner written as its id.
+     */
+    private static void assertRows(JsonNode rows, long bucket, long ownerId) {
+        assertEquals(ITEMS_PER_OWNER, rows.size());
+        for (JsonNode row : rows) {
+            assertEquals(bucket, row.get("bucket").asLong());
+            if (row.has("owner")) {
+                assertEquals(ownerId, row.get("owner").asLong());
+            } else {
+                assertEquals("owner-" + bucket, row.get("name").asText());
+            }
+        }
+    }
+
+    @Entity(name = "StressOwner")
+    @Table(name = "stress_owner")
+    static class StressOwner {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String name;
+
+        protected StressOwner() {
+        }
+
+        StressOwner(String name) {
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Entity(name = "StressItem")
+    @Table(name = "stress_item")
+    static class StressItem {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String name;
+        private Long bucket;
+        private String note;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private StressOwner owner;
+
+        protected StressItem() {
+        }
+
+        StressItem(String name, Long bucket, StressOwner owner) {
+            this.name = name;
+            this.bucket = bucket;
+            this.owner = owner;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getBucket() {
+            return bucket;
+        }
+
+        public String getNote() {
+            return note;
+        }
+
+        public StressOwner getOwner() {
+            return owner;
+        }
+    }
+}
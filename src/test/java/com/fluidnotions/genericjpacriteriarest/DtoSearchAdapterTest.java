@@ -0,0 +1,153 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Objects converted to searches by {@link DtoSearchPlan}, the components of a record and the fields of a class and its superclasses,
+ * and a search through {@link JpaCriteriaSearchDtoAdapterService} on H2.
+ */
+@SpringBootTest(properties = "spring.jpa.open-in-view=false")
+class DtoSearchAdapterTest extends H2TestSupport {
+
+    @Autowired
+    private JpaCriteriaSearchDtoAdapterService jpaCriteriaSearchDtoAdapterService;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 6).mapToObj(id -> new AdaptedItem(id, "item-" + id, id % 3, id % 2 == 0 ? AdaptedStatus.OPEN : AdaptedStatus.CLOSED,
+                LocalDate.of(2024, 1, (int) id))).toList());
+    }
+
+    @Test
+    void convertsTheComponentsOfARecord() {
+        var where = where(new RecordFilter("alpha", 7, (short) 2, null, AdaptedStatus.OPEN, LocalDate.of(2024, 1, 2), true, 'x',
+                UUID.fromString("00000000-0000-0000-0000-000000000001"), new BigDecimal("1.50"), 2.5, List.of(1L, 2L), Set.of("a"), Map.of("k", "v"), new Object()));
+
+        assertEquals(Map.of("name", "alpha"), where.like());
+        assertEquals(Map.of("bucket", 7L, "size", 2L), where.equalsLong());
+        assertEquals(Map.of("status", "OPEN", "createdOn", "2024-01-02", "active", "true", "grade", "x",
+                "ref", "00000000-0000-0000-0000-000000000001", "price", "1.50", "weight", "2.5"), where.equalsString());
+        assertEquals(Map.of("id", List.of(1L, 2L), "tags", List.of("a")), where.in());
+        assertNull(where.notEqualsLong());
+        assertNull(where.between());
+    }
+
+    @Test
+    void convertsTheFieldsOfAClassAndItsSuperclasses() {
+        var filter = new SubclassFilter();
+        filter.name = "beta";
+        filter.bucket = 3L;
+        filter.status = AdaptedStatus.CLOSED;
+
+        var where = where(filter);
+
+        assertEquals(Map.of("name", "beta"), where.like());
+        assertEquals(Map.of("bucket", 3L, "quantity", 0L), where.equalsLong());
+        assertEquals(Map.of("status", "CLOSED"), where.equalsString());
+        assertNull(where.in());
+    }
+
+    @Test
+    void skipsNullValues() {
+        var where = where(new SubclassFilter());
+
+        assertNull(where.like());
+        assertNull(where.equalsString());
+        assertEquals(Map.of("quantity", 0L), where.equalsLong());
+    }
+
+    @Test
+    void searchesWithTheCriteriaOfTheObject() {
+        var results = jpaCriteriaSearchDtoAdapterService.search("AdaptedItem", new AdaptedItemFilter("ITEM", 1L, AdaptedStatus.CLOSED, null));
+        assertEquals(List.of(1L), results.stream().map(item -> ((AdaptedItem) item).getId()).toList());
+
+        results = jpaCriteriaSearchDtoAdapterService.search("AdaptedItem", new AdaptedItemFilter(null, null, null, List.of(2L, 4L, 5L)));
+        assertEquals(Set.of(2L, 4L, 5L), Set.copyOf(results.stream().map(item -> ((AdaptedItem) item).getId()).toList()));
+    }
+
+    private static Dto.Where where(Object dto) {
+        return DtoSearchPlan.of(dto.getClass()).search(dto).where();
+    }
+
+    enum AdaptedStatus {
+        OPEN, CLOSED
+    }
+
+    /**
+     * The {@code attributes} map and the {@code other} object are of types the plan does not support and are left out.
+     */
+    record RecordFilter(String name, long bucket, short size, Integer quantity, AdaptedStatus status, LocalDate createdOn, boolean active, char grade,
+                        UUID ref, BigDecimal price, double weight, List<Long> id, Set<String> tags, Map<String, String> attributes, Object other) {
+    }
+
+    static class BaseFilter {
+        String name;
+        int quantity;
+    }
+
+    static class SubclassFilter extends BaseFilter {
+        static final String IGNORED = "static";
+        Long bucket;
+        AdaptedStatus status;
+    }
+
+    record AdaptedItemFilter(String name, Long bucket, AdaptedStatus status, List<Long> id) {
+    }
+
+    @Entity(name = "AdaptedItem")
+    @Table(name = "adapted_item")
+    static class AdaptedItem {
+        @Id
+        private Long id;
+        private String name;
+        private Long bucket;
+        @Enumerated(EnumType.STRING)
+        private AdaptedStatus status;
+        private LocalDate createdOn;
+
+        protected AdaptedItem() {
+        }
+
+        AdaptedItem(Long id, String name, Long bucket, AdaptedStatus status, LocalDate createdOn) {
+            this.id = id;
+            this.name = name;
+            this.bucket = bucket;
+            this.status = status;
+            this.createdOn = createdOn;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getBucket() {
+            return bucket;
+        }
+
+        public AdaptedStatus getStatus() {
+            return status;
+        }
+
+        public LocalDate getCreatedOn() {
+            return createdOn;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Entity tags on H2: 304 without a body while the entity's tables are unchanged, a tag of its own for every search and format, and
+ * a new tag with a fresh result after a patch of the table.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.etag.enabled=true"})
+@AutoConfigureMockMvc
+class EntityTagTest extends H2TestSupport {
+
+    private static final String SEARCH = "{\"where\": {\"like\": {\"name\": \"tagged\"}}, \"projection\": [\"id\", \"name\"], \"orderBy\": [{\"field\": \"id\"}]}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 3).mapToObj(id -> new TaggedItem(id, "tagged-" + id)).toList());
+    }
+
+    @Test
+    void answersUnchangedResultsWithNotModified() throws Exception {
+        String etag = etag(search(SEARCH));
+        assertTrue(etag.startsWith("W/\""), etag);
+
+        mockMvc.perform(search(SEARCH).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        mockMvc.perform(search(SEARCH).header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag.substring(2)))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(search(SEARCH).header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+    }
+
+    @Test
+    void tagsEverySearchAndFormatApart() throws Exception {
+        String etag = etag(search(SEARCH));
+
+        assertNotEquals(etag, etag(search(SEARCH.replace("\"tagged\"", "\"tagged-1\""))));
+        assertNotEquals(etag, etag(search(SEARCH).accept(MediaType.APPLICATION_CBOR)));
+        mockMvc.perform(search(SEARCH).accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tagsAnewAfterAPatch() throws Exception {
+        String etag = etag(search(SEARCH));
+
+        mockMvc.perform(patch("/patch/tagged_item/id/2").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"tagged-renamed\"}"))
+                .andExpect(status().isNoContent());
+
+        String patched = mockMvc.perform(search(SEARCH).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("tagged-renamed")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(patched);
+        assertNotEquals(etag, patched);
+        mockMvc.perform(search(SEARCH).header(HttpHeaders.IF_NONE_MATCH, patched))
+                .andExpect(status().isNotModified());
+    }
+
+    private MockHttpServletRequestBuilder search(String search) {
+        return post("/search/TaggedItem").contentType(MediaType.APPLICATION_JSON).content(search);
+    }
+
+    private String etag(MockHttpServletRequestBuilder request) throws Exception {
+        String etag = mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+
+    @Entity(name = "TaggedItem")
+    @Table(name = "tagged_item")
+    static class TaggedItem {
+        @Id
+        private Long id;
+        private String name;
+
+        protected TaggedItem() {
+        }
+
+        TaggedItem(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Base of the tests on H2. Each test maps entities of its own as nested classes, on tables no other test uses, as every context
+ * scans all of them; and contexts are shared by the test classes with the same configuration, so rows are seeded once per context.
+ */
+abstract class H2TestSupport {
+
+    @Autowired
+    protected EntityManager entityManager;
+    @Autowired
+    protected TransactionTemplate transactionTemplate;
+
+    /**
+     * Persists the entities in a transaction of their own, unless the table of the first one already has rows.
+     */
+    protected void seedOnce(List<?> entities) {
+        transactionTemplate.executeWithoutResult(status -> {
+            String entityName = entityManager.getMetamodel().entity(entities.get(0).getClass()).getName();
+            if (entityManager.createQuery("select count(e) from " + entityName + " e", Long.class).getSingleResult() == 0) {
+                entities.forEach(entityManager::persist);
+            }
+        });
+    }
+}
@@ -0,0 +1,133 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Index candidates from searches on H2, compared with the indexes H2 reports through {@link java.sql.DatabaseMetaData}.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false", "rest-jpa-criteria-search.index-advisor.enabled=true"})
+class IndexAdvisorTest extends H2TestSupport {
+
+    private static final String ENTITY = "AdvisedItem";
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private IndexAdvisor indexAdvisor;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.range(0, 100).mapToObj(i -> new AdvisedItem("item-" + i, i % 10, i % 2 == 0 ? "open" : "closed")).toList());
+        indexAdvisor.reset();
+    }
+
+    @Test
+    void ranksColumnsWithoutAnIndex() {
+        for (int i = 0; i < 5; i++) {
+            search(Dto.Where.builder().equalsLong(Map.of("bucket", 3L)).like(Map.of("name", "item-3")).likeMode(Map.of("name", Dto.MatchMode.STARTS_WITH)).build());
+        }
+        search(Dto.Where.builder().equalsString(Map.of("status", "open")).build());
+        search(Dto.Where.builder().like(Map.of("name", "7")).build());
+
+        Dto.IndexReport report = indexAdvisor.report();
+
+        assertEquals(1, report.candidates().size(), report.toString());
+        Dto.IndexCandidate candidate = report.candidates().get(0);
+        assertEquals("advised_item", candidate.table());
+        assertEquals(List.of("bucket", "name"), candidate.columns());
+        assertEquals(5, candidate.searches());
+        assertEquals("create index ix_advised_item_bucket_name on advised_item (bucket, name)", candidate.ddl());
+
+        Dto.PredicateUsage contains = usage(report, "name", "like(CONTAINS_IGNORE_CASE)");
+        assertFalse(contains.indexable());
+        assertEquals(1, contains.searches());
+        assertTrue(usage(report, "status", "equalsString").indexable());
+    }
+
+    @Test
+    void dropsCandidatesOnceIndexed() {
+        search(Dto.Where.builder().equalsLong(Map.of("bucket", 3L)).gt(Map.of("id", 10)).build());
+        Dto.IndexCandidate candidate = indexAdvisor.report().candidates().get(0);
+        assertEquals(List.of("bucket", "id"), candidate.columns());
+        assertNotNull(candidate.partialIndex(), "the primary key index starts with id");
+
+        jdbcTemplate.execute(candidate.ddl());
+        try {
+            assertTrue(indexAdvisor.report().candidates().isEmpty());
+        } finally {
+            jdbcTemplate.execute("drop index ix_advised_item_bucket_id");
+        }
+    }
+
+    @Test
+    void ignoresCasesNoIndexServes() {
+        search(Dto.Where.builder().notEqualsLong(Map.of("bucket", 3L)).isNotNull(Set.of("status")).build());
+        search(Dto.Where.builder().equalsLong(Map.of("id", 5L)).build());
+
+        Dto.IndexReport report = indexAdvisor.report();
+
+        assertTrue(report.candidates().isEmpty(), report.toString());
+        assertEquals(3, report.predicates().size());
+    }
+
+    private void search(Dto.Where where) {
+        jpaCriteriaSearchService.search(ENTITY, Dto.Search.builder().where(where).build());
+    }
+
+    private static Dto.PredicateUsage usage(Dto.IndexReport report, String attribute, String operator) {
+        return report.predicates().stream()
+                .filter(usage -> usage.attribute().equals(attribute) && usage.operator().equals(operator))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No usage of %s %s in %s".formatted(operator, attribute, report.predicates())));
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "advised_item", indexes = @Index(name = "ix_advised_item_status", columnList = "status"))
+    static class AdvisedItem {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+        private String name;
+        private Long bucket;
+        private String status;
+
+        protected AdvisedItem() {
+        }
+
+        AdvisedItem(String name, Long bucket, String status) {
+            this.name = name;
+            this.bucket = bucket;
+            this.status = status;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getBucket() {
+            return bucket;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+    }
+}
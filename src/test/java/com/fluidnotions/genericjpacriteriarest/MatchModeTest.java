@@ -0,0 +1,100 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Match modes on H2: the default mode, the mode configured for an attribute and the mode of the request, wildcards matched literally
+ * outside {@code containsIgnoreCase}, and 400 for a mode that does not exist.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.like.mode.MatchedItem.code=exact"})
+@AutoConfigureMockMvc
+class MatchModeTest extends H2TestSupport {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(List.of(new MatchedItem(1L, "A-1", "Alpha_1"), new MatchedItem(2L, "A-10", "alphabet"),
+                new MatchedItem(3L, "B-1", "Beta 100%"), new MatchedItem(4L, "a-1", "gamma alpha")));
+    }
+
+    @Test
+    void matchesByTheModeOfTheRequest() throws Exception {
+        search("{\"like\": {\"name\": \"ALPHA\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1, 2, 4)));
+        search("{\"like\": {\"name\": \"alpha\"}, \"likeMode\": {\"name\": \"contains\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(2, 4)));
+        search("{\"like\": {\"name\": \"alpha\"}, \"likeMode\": {\"name\": \"startsWith\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(2)));
+        search("{\"like\": {\"name\": \"alpha\"}, \"likeMode\": {\"name\": \"startsWithIgnoreCase\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1, 2)));
+        search("{\"like\": {\"name\": \"alpha\"}, \"likeMode\": {\"name\": \"exact\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", empty()));
+        search("{\"like\": {\"name\": \"ALPHABET\"}, \"likeMode\": {\"name\": \"exactIgnoreCase\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(2)));
+    }
+
+    @Test
+    void matchesByTheModeConfiguredForTheAttribute() throws Exception {
+        search("{\"like\": {\"code\": \"A-1\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1)));
+        search("{\"like\": {\"code\": \"A-1\"}, \"likeMode\": {\"code\": \"startsWith\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1, 2)));
+    }
+
+    @Test
+    void matchesWildcardsLiterally() throws Exception {
+        search("{\"like\": {\"name\": \"_1\"}, \"likeMode\": {\"name\": \"contains\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1)));
+        search("{\"like\": {\"name\": \"0%\"}, \"likeMode\": {\"name\": \"contains\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(3)));
+    }
+
+    @Test
+    void answersUnknownModesWithBadRequest() throws Exception {
+        search("{\"like\": {\"name\": \"alpha\"}, \"likeMode\": {\"name\": \"fuzzy\"}}").andExpect(status().isBadRequest());
+    }
+
+    private ResultActions search(String where) throws Exception {
+        return mockMvc.perform(post("/search/MatchedItem").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"where\": " + where + ", \"projection\": [\"id\"], \"orderBy\": [{\"field\": \"id\"}]}"));
+    }
+
+    @Entity(name = "MatchedItem")
+    @Table(name = "matched_item")
+    static class MatchedItem {
+        @Id
+        private Long id;
+        private String code;
+        private String name;
+
+        protected MatchedItem() {
+        }
+
+        MatchedItem(Long id, String code, String name) {
+            this.id = id;
+            this.code = code;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
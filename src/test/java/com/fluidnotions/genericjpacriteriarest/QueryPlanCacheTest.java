@@ -0,0 +1,113 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cached criteria plans on H2: searches of one shape share a plan and still bind their own values, other shapes get their own, and
+ * the cache keeps at most its size.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.query-plan-cache.size=4"})
+class QueryPlanCacheTest extends H2TestSupport {
+
+    private static final String ENTITY = "PlannedItem";
+
+    @Autowired
+    private QueryPlanCache queryPlanCache;
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 6).mapToObj(id -> new PlannedItem(id, id % 3, "item-" + id)).toList());
+    }
+
+    @Test
+    void sharesThePlanOfASearchShape() {
+        queryPlanCache.clear();
+
+        assertEquals(List.of(1L, 4L), ids(Dto.Where.builder().equalsLong(Map.of("bucket", 1L)).build()));
+        long misses = queryPlanCache.misses();
+        long hits = queryPlanCache.hits();
+
+        assertEquals(List.of(2L, 5L), ids(Dto.Where.builder().equalsLong(Map.of("bucket", 2L)).build()));
+        assertEquals(List.of(3L, 6L), ids(Dto.Where.builder().equalsLong(Map.of("bucket", 0L)).build()));
+
+        assertEquals(misses, queryPlanCache.misses());
+        assertEquals(hits + 2, queryPlanCache.hits());
+    }
+
+    @Test
+    void plansEachShapeOnce() {
+        queryPlanCache.clear();
+
+        assertEquals(List.of(5L, 6L), ids(Dto.Where.builder().like(Map.of("name", "item-5")).build(), Dto.Where.builder().like(Map.of("name", "item-6")).build()));
+        long misses = queryPlanCache.misses();
+        assertEquals(List.of(2L), ids(Dto.Where.builder().equalsLong(Map.of("bucket", 2L)).notEqualsLong(Map.of("id", 5L)).build()));
+
+        assertEquals(misses + 1, queryPlanCache.misses());
+    }
+
+    @Test
+    void keepsAtMostItsSize() {
+        queryPlanCache.clear();
+
+        for (String field : List.of("id", "bucket", "name")) {
+            ids(Dto.Where.builder().isNull(Set.of(field)).build());
+            ids(Dto.Where.builder().isNotNull(Set.of(field)).build());
+        }
+
+        assertEquals(4, queryPlanCache.size());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), ids(Dto.Where.builder().isNotNull(Set.of("id")).build()));
+    }
+
+    private List<Long> ids(Dto.Where... wheres) {
+        return Arrays.stream(wheres)
+                .flatMap(where -> jpaCriteriaSearchService.search(ENTITY, Dto.Search.builder().where(where)
+                        .orderBy(List.of(Dto.OrderBy.builder().field("id").build())).build()).results().stream())
+                .map(row -> ((PlannedItem) row).getId())
+                .toList();
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "planned_item")
+    static class PlannedItem {
+        @Id
+        private Long id;
+        private Long bucket;
+        private String name;
+
+        protected PlannedItem() {
+        }
+
+        PlannedItem(Long id, Long bucket, String name) {
+            this.id = id;
+            this.bucket = bucket;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getBucket() {
+            return bucket;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
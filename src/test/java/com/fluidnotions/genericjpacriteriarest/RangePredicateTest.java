@@ -0,0 +1,130 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * In, between and comparison criteria on H2, with in lists longer than a chunk and padded, values converted to the attribute type,
+ * 400 for values that do not convert, and criteria on attributes the entity does not have ignored.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.in.chunk-size=3", "rest-jpa-criteria-search.in.parameter-padding=true"})
+@AutoConfigureMockMvc
+class RangePredicateTest extends H2TestSupport {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 12).mapToObj(id -> new RangedItem(id, id % 3 == 0 ? RangedStatus.CLOSED : RangedStatus.OPEN,
+                BigDecimal.valueOf(id).divide(BigDecimal.valueOf(2)), LocalDate.of(2024, 1, (int) id))).toList());
+    }
+
+    @Test
+    void matchesInLists() throws Exception {
+        search("{\"in\": {\"id\": [1, 2, \"5\", 7, 8, 11, 7, 100]}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1, 2, 5, 7, 8, 11)));
+        search("{\"in\": {\"id\": [4]}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(4)));
+        search("{\"in\": {\"status\": [\"CLOSED\"]}, \"lte\": {\"id\": 7}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(3, 6)));
+    }
+
+    @Test
+    void matchesInclusiveRanges() throws Exception {
+        search("{\"between\": {\"createdOn\": {\"from\": \"2024-01-03\", \"to\": \"2024-01-05\"}}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(3, 4, 5)));
+        search("{\"between\": {\"price\": {\"from\": 1, \"to\": \"2.5\"}}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(2, 3, 4, 5)));
+    }
+
+    @Test
+    void matchesComparisons() throws Exception {
+        search("{\"gt\": {\"price\": 4.5}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(10, 11, 12)));
+        search("{\"gte\": {\"price\": 4.5}, \"lt\": {\"createdOn\": \"2024-01-11\"}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(9, 10)));
+        search("{\"lte\": {\"id\": 2}, \"in\": {\"id\": [1, 2, 3]}}").andExpect(status().isOk()).andExpect(jsonPath("$[*].id", contains(1, 2)));
+    }
+
+    @Test
+    void answersUnconvertibleValuesWithBadRequest() throws Exception {
+        search("{\"gt\": {\"price\": \"abc\"}}").andExpect(status().isBadRequest());
+        search("{\"in\": {\"createdOn\": [\"yesterday\"]}}").andExpect(status().isBadRequest());
+        search("{\"between\": {\"createdOn\": {\"from\": \"2024-01-03\", \"to\": \"soon\"}}}").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void ignoresCriteriaOnUnknownAttributes() throws Exception {
+        search("{\"between\": {\"missing\": {\"from\": 1, \"to\": 2}}, \"lt\": {\"id\": 3}}").andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(1, 2)));
+    }
+
+    @Test
+    void namesEveryOperatorWhenNoCriterionIsGiven() throws Exception {
+        String message = mockMvc.perform(post("/search/RangedItem").contentType(MediaType.APPLICATION_JSON).content("{\"where\": {\"in\": {}}}"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        for (String operator : new String[]{"like", "equalsLong", "notEqualsLong", "equalsString", "isNull", "isNotNull", "in", "between", "gt", "gte", "lt", "lte"}) {
+            assertTrue(message.matches("(?s).*\\b" + operator + "\\b.*"), operator);
+        }
+    }
+
+    private ResultActions search(String where) throws Exception {
+        return mockMvc.perform(post("/search/RangedItem").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"where\": " + where + ", \"projection\": [\"id\"], \"orderBy\": [{\"field\": \"id\"}]}"));
+    }
+
+    enum RangedStatus {
+        OPEN, CLOSED
+    }
+
+    @Entity(name = "RangedItem")
+    @Table(name = "ranged_item")
+    static class RangedItem {
+        @Id
+        private Long id;
+        @Enumerated(EnumType.STRING)
+        private RangedStatus status;
+        private BigDecimal price;
+        private LocalDate createdOn;
+
+        protected RangedItem() {
+        }
+
+        RangedItem(Long id, RangedStatus status, BigDecimal price, LocalDate createdOn) {
+            this.id = id;
+            this.status = status;
+            this.price = price;
+            this.createdOn = createdOn;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public RangedStatus getStatus() {
+            return status;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public LocalDate getCreatedOn() {
+            return createdOn;
+        }
+    }
+}
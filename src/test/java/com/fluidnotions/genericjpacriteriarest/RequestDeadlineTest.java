@@ -0,0 +1,40 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.QueryTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Statement timeouts in whole seconds, rounded up, and cut to the time left of the request.
+ */
+class RequestDeadlineTest {
+
+    @Test
+    void roundsTimeoutsUpToWholeSeconds() {
+        assertEquals(0, RequestDeadline.timeoutSeconds(0));
+        assertEquals(1, RequestDeadline.timeoutSeconds(1));
+        assertEquals(1, RequestDeadline.timeoutSeconds(300));
+        assertEquals(1, RequestDeadline.timeoutSeconds(1000));
+        assertEquals(2, RequestDeadline.timeoutSeconds(1001));
+    }
+
+    @Test
+    void cutsTimeoutsToTheTimeLeft() {
+        long deadline = System.nanoTime() + Duration.ofMillis(1500).toNanos();
+
+        assertEquals(2, RequestDeadline.run(deadline, () -> RequestDeadline.timeoutSeconds(0)));
+        assertEquals(2, RequestDeadline.run(deadline, () -> RequestDeadline.timeoutSeconds(60_000)));
+        assertEquals(1, RequestDeadline.run(deadline, () -> RequestDeadline.timeoutSeconds(300)));
+        assertEquals(0, RequestDeadline.timeoutSeconds(0));
+    }
+
+    @Test
+    void failsQueriesStartingPastTheDeadline() {
+        long deadline = System.nanoTime() - 1;
+
+        assertThrows(QueryTimeoutException.class, () -> RequestDeadline.run(deadline, () -> RequestDeadline.timeoutSeconds(0)));
+    }
+}
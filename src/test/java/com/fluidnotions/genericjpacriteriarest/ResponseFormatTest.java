@@ -0,0 +1,145 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Response formats and compression on H2: Smile and CBOR by the Accept header holding the same rows as JSON, zstd and gzip by
+ * Accept-Encoding above the minimum size, small responses sent as they are, and 406 for a media type that is not available.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.compression.enabled=true", "rest-jpa-criteria-search.compression.min-size=256B"})
+@AutoConfigureMockMvc
+class ResponseFormatTest extends H2TestSupport {
+
+    private static final String SEARCH = "{\"where\": {\"like\": {\"name\": \"encoded\"}}, \"orderBy\": [{\"field\": \"id\"}]}";
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 20).mapToObj(id -> new EncodedItem(id, "encoded-item-" + id, id * 3)).toList());
+    }
+
+    @Test
+    void writesSmileAndCborByTheAcceptHeader() throws Exception {
+        JsonNode expected = json.readTree(body(search(SEARCH)));
+        assertEquals(20, expected.size());
+
+        byte[] smile = mockMvc.perform(search(SEARCH).accept(ResponseFormat.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ResponseFormat.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(expected, new ObjectMapper(new SmileFactory()).readTree(smile));
+
+        byte[] cbor = mockMvc.perform(search(SEARCH).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(expected, new ObjectMapper(new CBORFactory()).readTree(cbor));
+    }
+
+    @Test
+    void compressesByTheAcceptEncodingHeader() throws Exception {
+        byte[] plain = body(search(SEARCH));
+        assertTrue(plain.length >= 256, "response below the minimum size");
+
+        byte[] zstd = mockMvc.perform(search(SEARCH).header(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "zstd"))
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(plain, decode(new ZstdInputStream(new ByteArrayInputStream(zstd))));
+
+        byte[] gzip = mockMvc.perform(search(SEARCH).header(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertArrayEquals(plain, decode(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+    }
+
+    @Test
+    void sendsSmallResponsesAsTheyAre() throws Exception {
+        mockMvc.perform(search("{\"where\": {\"equalsLong\": {\"id\": 1}}, \"projection\": [\"id\"]}").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().json("[{\"id\": 1}]"));
+    }
+
+    @Test
+    void answersUnavailableMediaTypesWithNotAcceptable() throws Exception {
+        mockMvc.perform(search(SEARCH).accept(MediaType.APPLICATION_XML)).andExpect(status().isNotAcceptable());
+    }
+
+    private MockHttpServletRequestBuilder search(String search) {
+        return post("/search/EncodedItem").contentType(MediaType.APPLICATION_JSON).content(search);
+    }
+
+    private byte[] body(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+    }
+
+    private static byte[] decode(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Entity(name = "EncodedItem")
+    @Table(name = "encoded_item")
+    static class EncodedItem {
+        @Id
+        private Long id;
+        private String name;
+        private Long amount;
+
+        protected EncodedItem() {
+        }
+
+        EncodedItem(Long id, String name, Long amount) {
+            this.id = id;
+            this.name = name;
+            this.amount = amount;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getAmount() {
+            return amount;
+        }
+    }
+}
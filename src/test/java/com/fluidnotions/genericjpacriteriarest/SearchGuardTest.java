@@ -0,0 +1,206 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guard limits on H2: 422 past the max rows, 503 when no permit frees up in time, no connection taken while waiting for one, a
+ * statement cancelled by a timeout under a second, and streams cut short by the same limits.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.guard.entity.GuardedItem.max-rows=3", "rest-jpa-criteria-search.guard.entity.GuardedItem.max-concurrency=1",
+        "rest-jpa-criteria-search.guard.entity.SlowItem.query-timeout=300ms", "rest-jpa-criteria-search.guard.queue-timeout=500ms"})
+@AutoConfigureMockMvc
+class SearchGuardTest extends H2TestSupport {
+
+    private static final String ENTITY = "GuardedItem";
+
+    @Autowired
+    private SearchGuard searchGuard;
+    @Autowired
+    private EntityRegistry entityRegistry;
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private HikariDataSource dataSource;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 5).mapToObj(id -> new GuardedItem(id, id % 2 == 0 ? "even" : "odd")).toList());
+    }
+
+    @Test
+    void rejectsSearchesPastTheMaxRows() throws Exception {
+        mockMvc.perform(post("/search/GuardedItem").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isUnprocessableEntity());
+        mockMvc.perform(post("/search/GuardedItem").contentType(MediaType.APPLICATION_JSON).content("{\"where\": {\"equalsString\": {\"parity\": \"even\"}}}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+        mockMvc.perform(post("/search/GuardedItem").contentType(MediaType.APPLICATION_JSON).content("{\"limit\": 3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+    }
+
+    @Test
+    void answersServiceUnavailableWhenNoPermitFrees() throws Exception {
+        long rejected = searchGuard.rejected();
+
+        searchGuard.limit(entityRegistry.entry(ENTITY), () -> {
+            try {
+                mockMvc.perform(post("/search/GuardedItem").contentType(MediaType.APPLICATION_JSON).content("{\"limit\": 1}"))
+                        .andExpect(status().isServiceUnavailable());
+                return null;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        assertEquals(rejected + 1, searchGuard.rejected());
+    }
+
+    @Test
+    void holdsNoConnectionWhileWaitingForAPermit() throws Exception {
+        Dto.Search search = Dto.Search.builder().limit(2).build();
+
+        CompletableFuture<Dto.SearchResult> waiting = searchGuard.limit(entityRegistry.entry(ENTITY), () -> {
+            CompletableFuture<Dto.SearchResult> searching = CompletableFuture.supplyAsync(() -> jpaCriteriaSearchService.search(ENTITY, search));
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() < until) {
+                assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+                Thread.onSpinWait();
+            }
+            assertFalse(searching.isDone());
+            return searching;
+        });
+
+        assertEquals(List.of(1L, 2L), waiting.get(5, TimeUnit.SECONDS).results().stream().map(row -> ((GuardedItem) row).getId()).toList());
+    }
+
+    @Test
+    void cancelsStatementsPastASubSecondTimeout() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> mockMvc.perform(post("/search/SlowItem").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"where\": {\"like\": {\"name\": \"none\"}}}"))
+                .andExpect(status().isGatewayTimeout()));
+    }
+
+    @Test
+    void abortsStreamsPastTheMaxRows() throws Exception {
+        MvcResult started = mockMvc.perform(post("/search/GuardedItem/stream").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertInstanceOf(SearchRejectedException.class, rootCause(started.getAsyncResult(5000)));
+    }
+
+    @Test
+    void cancelsStreamedStatementsPastTheTimeout() {
+        Object result = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> mockMvc.perform(post("/search/SlowItem/stream")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"where\": {\"like\": {\"name\": \"none\"}}}"))
+                .andExpect(request().asyncStarted())
+                .andReturn().getAsyncResult(10_000));
+
+        assertTrue(Stream.iterate(assertInstanceOf(Throwable.class, result), Objects::nonNull, Throwable::getCause)
+                .anyMatch(cause -> cause instanceof QueryTimeoutException || cause instanceof org.hibernate.QueryTimeoutException));
+    }
+
+    @Test
+    void endsTruncatedStreamsAtTheMaxRows() {
+        SearchGuard truncating = new SearchGuard(entityRegistry, new SearchGuard.Limits(null, 3, null), Map.of(), true, Duration.ZERO);
+
+        List<Integer> read = new ArrayList<>();
+        truncating.stream(entityRegistry.entry(ENTITY), List.of(1, 2, 3, 4, 5).iterator()).forEachRemaining(read::add);
+
+        assertEquals(List.of(1, 2, 3), read);
+    }
+
+    @Test
+    void abortsStreamsReadSlowerThanTheTimeout() throws Exception {
+        SearchGuard timing = new SearchGuard(entityRegistry, new SearchGuard.Limits(Duration.ofMillis(100), null, null), Map.of(), false, Duration.ZERO);
+        Iterator<Integer> rows = timing.stream(entityRegistry.entry(ENTITY), List.of(1, 2).iterator());
+
+        assertEquals(1, rows.next());
+        Thread.sleep(150);
+        assertThrows(QueryTimeoutException.class, rows::next);
+    }
+
+    private static Throwable rootCause(Object result) {
+        Throwable cause = assertInstanceOf(Throwable.class, result);
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "guarded_item")
+    static class GuardedItem {
+        @Id
+        private Long id;
+        private String parity;
+
+        protected GuardedItem() {
+        }
+
+        GuardedItem(Long id, String parity) {
+            this.id = id;
+            this.parity = parity;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getParity() {
+            return parity;
+        }
+    }
+
+    /**
+     * Billions of rows computed by H2, so a search matching none of them runs until its statement is cancelled.
+     */
+    @Entity(name = "SlowItem")
+    @Immutable
+    @Subselect("select x as id, concat('item-', x) as name from system_range(1, 10000000000)")
+    static class SlowItem {
+        @Id
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
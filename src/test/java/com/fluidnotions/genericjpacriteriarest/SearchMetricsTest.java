@@ -0,0 +1,123 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.context.annotation.Bean;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Search meters and the slow query log on H2: phases tagged by the shape of the criteria as resolved against the entity, names that
+ * are not attributes kept out of the shape, and every search logged with its SQL under a threshold of one nanosecond.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.slow-query.threshold=1ns", "rest-jpa-criteria-search.slow-query.capture-sql=true"})
+@ExtendWith(OutputCaptureExtension.class)
+class SearchMetricsTest extends H2TestSupport {
+
+    private static final String ENTITY = "MeteredItem";
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 4).mapToObj(id -> new MeteredItem(id, "item-" + id, id % 2 == 0 ? "OPEN" : "CLOSED")).toList());
+    }
+
+    @Test
+    void recordsThePhasesOfASearchByShape() {
+        search(Dto.Where.builder().equalsString(Map.of("status", "OPEN")).like(Map.of("name", "item")).build());
+
+        String shape = "like(name) equalsString(status)";
+        for (String phase : new String[]{"resolve", "plan", "execute", "serialize"}) {
+            Timer timer = meterRegistry.find("rest.jpa.criteria.search.phase").tags("entity", ENTITY, "shape", shape, "path", "entity", "phase", phase).timer();
+            assertNotNull(timer, phase);
+            assertTrue(timer.count() > 0, phase);
+        }
+        assertEquals(2, meterRegistry.get("rest.jpa.criteria.search.rows").tags("entity", ENTITY, "shape", shape).summary().max());
+        assertTrue(meterRegistry.get("rest.jpa.criteria.search.bytes").tags("entity", ENTITY, "shape", shape).summary().totalAmount() > 0);
+    }
+
+    @Test
+    void keepsNamesThatAreNotAttributesOutOfTheShape() {
+        for (int i = 0; i < 5; i++) {
+            search(Dto.Where.builder().like(Map.of("name", "item", "missing-" + i, "x")).build());
+            search(Dto.Where.builder().equalsLong(Map.of("unknown-" + i, 1L)).build());
+        }
+
+        Set<String> shapes = meterRegistry.find("rest.jpa.criteria.search.phase").tag("entity", ENTITY).timers().stream()
+                .map(timer -> timer.getId().getTag("shape")).collect(Collectors.toSet());
+        assertTrue(shapes.containsAll(Set.of("like(name)", "all")), shapes.toString());
+        assertTrue(shapes.stream().noneMatch(shape -> shape.contains("missing") || shape.contains("unknown")), shapes.toString());
+    }
+
+    @Test
+    void logsSlowSearchesWithTheirSql(CapturedOutput output) {
+        search(Dto.Where.builder().equalsString(Map.of("status", "CLOSED")).build());
+
+        String logged = output.getOut().lines().filter(line -> line.contains("Slow query on " + ENTITY)).reduce("", String::concat);
+        assertTrue(logged.contains("\"equalsString\":{\"status\":\"CLOSED\"}"), logged);
+        assertTrue(logged.contains("from metered_item"), logged);
+    }
+
+    private void search(Dto.Where where) {
+        jpaCriteriaSearchService.searchAndSerialize(ENTITY, Dto.Search.builder().where(where).build());
+    }
+
+    @TestConfiguration
+    static class TestBeans {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "metered_item")
+    static class MeteredItem {
+        @Id
+        private Long id;
+        private String name;
+        private String status;
+
+        protected MeteredItem() {
+        }
+
+        MeteredItem(Long id, String name, String status) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Limit, offset and keyset paging on H2, walking every page of a sort on an attribute with nulls.
+ */
+@SpringBootTest(properties = "spring.jpa.open-in-view=false")
+class SearchPagingTest extends H2TestSupport {
+
+    private static final String ENTITY = "PagedItem";
+    private static final int ROWS = 23;
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, ROWS).mapToObj(id -> new PagedItem(id, id % 4 == 0 ? null : (int) (id % 5))).toList());
+    }
+
+    @Test
+    void walksEveryPageOfANullableKeyAscending() {
+        List<Long> expected = expectedIds(false);
+
+        assertEquals(expected, walkEntities(false));
+        assertEquals(expected, walkProjection(false));
+    }
+
+    @Test
+    void walksEveryPageOfANullableKeyDescending() {
+        List<Long> expected = expectedIds(true);
+
+        assertEquals(expected, walkEntities(true));
+        assertEquals(expected, walkProjection(true));
+    }
+
+    @Test
+    void pagesByOffsetWithTotal() {
+        Dto.SearchResult page = jpaCriteriaSearchService.search(ENTITY, Dto.Search.builder()
+                .orderBy(List.of(Dto.OrderBy.builder().field("id").desc(true).build()))
+                .limit(5).offset(5).count(true).build());
+
+        assertEquals(List.of(18L, 17L, 16L, 15L, 14L), page.results().stream().map(row -> ((PagedItem) row).getId()).toList());
+        assertEquals(ROWS, page.total());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void rejectsACursorOfAnotherOrder() {
+        String cursor = jpaCriteriaSearchService.search(ENTITY, keysetSearch(false, null)).nextCursor();
+
+        assertThrows(IllegalArgumentException.class, () -> jpaCriteriaSearchService.search(ENTITY, keysetSearch(true, cursor)));
+    }
+
+    private List<Long> walkEntities(boolean descending) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Dto.SearchResult page = jpaCriteriaSearchService.search(ENTITY, keysetSearch(descending, cursor));
+            assertTrue(page.results().size() <= 4);
+            page.results().forEach(row -> ids.add(((PagedItem) row).getId()));
+            cursor = page.nextCursor();
+        } while (cursor != null && ids.size() <= ROWS);
+        return ids;
+    }
+
+    private List<Long> walkProjection(boolean descending) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Dto.Search search = keysetSearch(descending, cursor);
+            search = Dto.Search.builder().projection(new String[]{"id", "rank"}).orderBy(search.orderBy()).limit(search.limit())
+                    .keyset(true).cursor(cursor).build();
+            JsonNode page = read(jpaCriteriaSearchService.searchAndSerialize(ENTITY, search));
+            page.get("results").forEach(row -> ids.add(row.get("id").asLong()));
+            cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+        } while (cursor != null && ids.size() <= ROWS);
+        return ids;
+    }
+
+    private static Dto.Search keysetSearch(boolean descending, String cursor) {
+        return Dto.Search.builder()
+                .orderBy(List.of(Dto.OrderBy.builder().field("rank").desc(descending).build()))
+                .limit(4).keyset(true).cursor(cursor).build();
+    }
+
+    /**
+     * Nulls sort after every value, then by id.
+     */
+    private static List<Long> expectedIds(boolean descending) {
+        Comparator<Integer> values = Comparator.nullsLast(Comparator.<Integer>naturalOrder());
+        Comparator<Long> byRank = Comparator.comparing(SearchPagingTest::rank, descending ? values.reversed() : values);
+        return LongStream.rangeClosed(1, ROWS).boxed().sorted(byRank.thenComparing(Comparator.naturalOrder())).toList();
+    }
+
+    private static Integer rank(long id) {
+        return id % 4 == 0 ? null : (int) (id % 5);
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new AssertionError(json, e);
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "paged_item")
+    static class PagedItem {
+        @Id
+        private Long id;
+        @Column(name = "item_rank")
+        private Integer rank;
+
+        protected PagedItem() {
+        }
+
+        PagedItem(Long id, Integer rank) {
+            this.id = id;
+            this.rank = rank;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getRank() {
+            return rank;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The result cache on H2: a repeated search, with its criteria maps in any order, served from the cache until a patch to one of the
+ * tables the entity reads from, and an entity with a zero time to live never cached.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.result-cache.enabled=true", "rest-jpa-criteria-search.result-cache.entity-ttl.CachedOwner=0s"})
+@AutoConfigureMockMvc
+class SearchResultCacheTest extends H2TestSupport {
+
+    @Autowired
+    private LocalSearchResultCache searchResultCache;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        CachedOwner owner = new CachedOwner(1L, "owner");
+        seedOnce(List.of(owner, new CachedItem(1L, 10L, owner), new CachedItem(2L, 20L, owner)));
+    }
+
+    @Test
+    void servesRepeatedSearchesUntilAPatch() throws Exception {
+        String search = """
+                {"where": {"equalsLong": {"id": 1, "quantity": 10}}, "projection": ["id", "owner.name"]}""";
+        String reordered = """
+                {"projection": ["id", "owner.name"], "where": {"equalsLong": {"quantity": 10, "id": 1}}}""";
+        long hits = searchResultCache.hits();
+
+        String first = search("CachedItem", search);
+        assertEquals(first, search("CachedItem", search));
+        assertEquals(first, search("CachedItem", reordered));
+        assertEquals(hits + 2, searchResultCache.hits());
+
+        mockMvc.perform(patch("/patch/cached_owner/id/1").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"renamed\"}"))
+                .andExpect(status().isNoContent());
+
+        String patched = search("CachedItem", search);
+        assertTrue(patched.contains("renamed"), patched);
+        assertEquals(hits + 2, searchResultCache.hits());
+        assertEquals(patched, search("CachedItem", search));
+        assertEquals(hits + 3, searchResultCache.hits());
+    }
+
+    @Test
+    void neverCachesAnEntityWithoutTimeToLive() throws Exception {
+        long hits = searchResultCache.hits();
+
+        search("CachedOwner", "{\"projection\": [\"id\"]}");
+        search("CachedOwner", "{\"projection\": [\"id\"]}");
+
+        assertEquals(hits, searchResultCache.hits());
+    }
+
+    private String search(String entity, String search) throws Exception {
+        return mockMvc.perform(post("/search/" + entity).contentType(MediaType.APPLICATION_JSON).content(search))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Entity(name = "CachedOwner")
+    @Table(name = "cached_owner")
+    static class CachedOwner {
+        @Id
+        private Long id;
+        private String name;
+
+        protected CachedOwner() {
+        }
+
+        CachedOwner(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Entity(name = "CachedItem")
+    @Table(name = "cached_item")
+    static class CachedItem {
+        @Id
+        private Long id;
+        private Long quantity;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private CachedOwner owner;
+
+        protected CachedItem() {
+        }
+
+        CachedItem(Long id, Long quantity, CachedOwner owner) {
+            this.id = id;
+            this.quantity = quantity;
+            this.owner = owner;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getQuantity() {
+            return quantity;
+        }
+
+        public CachedOwner getOwner() {
+            return owner;
+        }
+    }
+}
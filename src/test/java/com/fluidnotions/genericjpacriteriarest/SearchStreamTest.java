@@ -0,0 +1,143 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streamed searches on H2, read in fetches smaller than the result and cleared every few rows: the JSON array reads the same as the
+ * buffered search, NDJSON one row per line.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.streaming.fetch-size=2", "rest-jpa-criteria-search.streaming.clear-every=3"})
+@AutoConfigureMockMvc
+class SearchStreamTest extends H2TestSupport {
+
+    private static final String ENTITY = "StreamedItem";
+    private static final String SEARCH = """
+            {"where": {"like": {"label": "item"}}, "projection": ["id", "label", "owner.name"], "orderBy": [{"field": "id"}]}""";
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void seed() {
+        StreamedOwner owner = new StreamedOwner(1L, "owner");
+        seedOnce(Stream.<Object>concat(Stream.of(owner), LongStream.rangeClosed(1, 7).mapToObj(id -> new StreamedItem(id, "item-" + id, id % 2 == 0 ? owner : null))).toList());
+    }
+
+    @Test
+    void streamsTheRowsOfTheSearch() throws Exception {
+        MockHttpServletResponse response = stream("/search/StreamedItem/stream", SEARCH);
+
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, response.getContentType());
+        JsonNode rows = objectMapper.readTree(response.getContentAsByteArray());
+        assertEquals(7, rows.size());
+        assertEquals(objectMapper.readTree(jpaCriteriaSearchService.searchAndSerialize(ENTITY, objectMapper.readValue(SEARCH, Dto.Search.class))), rows);
+        assertEquals("owner", rows.get(1).get("name").asText());
+    }
+
+    @Test
+    void streamsOneRowPerLine() throws Exception {
+        MockHttpServletResponse response = stream("/search/StreamedItem/stream?format=ndjson", SEARCH);
+
+        assertEquals(MediaType.APPLICATION_NDJSON_VALUE, response.getContentType());
+        List<String> lines = response.getContentAsString().lines().toList();
+        assertEquals(7, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(i + 1, objectMapper.readTree(lines.get(i)).get("id").asLong());
+        }
+    }
+
+    @Test
+    void answersAnUnknownEntityWithBadRequest() throws Exception {
+        mockMvc.perform(post("/search/MissingEntity/stream").contentType(MediaType.APPLICATION_JSON).content(SEARCH))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+    }
+
+    private MockHttpServletResponse stream(String url, String search) throws Exception {
+        MvcResult started = mockMvc.perform(post(url).contentType(MediaType.APPLICATION_JSON).content(search))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn().getResponse();
+    }
+
+    @Entity(name = "StreamedOwner")
+    @Table(name = "streamed_owner")
+    static class StreamedOwner {
+        @Id
+        private Long id;
+        private String name;
+
+        protected StreamedOwner() {
+        }
+
+        StreamedOwner(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "streamed_item")
+    static class StreamedItem {
+        @Id
+        private Long id;
+        private String label;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private StreamedOwner owner;
+
+        protected StreamedItem() {
+        }
+
+        StreamedItem(Long id, String label, StreamedOwner owner) {
+            this.id = id;
+            this.label = label;
+            this.owner = owner;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public StreamedOwner getOwner() {
+            return owner;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Single flight on H2: identical searches arriving while one runs share its query and result, a search after a patch runs its own,
+ * and a search in a caller's transaction is never shared.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.guard.entity.FlightItem.max-concurrency=1", "rest-jpa-criteria-search.guard.queue-timeout=10s"})
+class SingleFlightTest extends H2TestSupport {
+
+    private static final String ENTITY = "FlightItem";
+    private static final int SEARCHES = 8;
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private JpaPatchService jpaPatchService;
+    @Autowired
+    private SearchGuard searchGuard;
+    @Autowired
+    private EntityRegistry entityRegistry;
+    @Autowired
+    private ExecuteCounter executeCounter;
+
+    private final Dto.Search search = Dto.Search.builder()
+            .where(Dto.Where.builder().like(Map.of("name", "flight")).build())
+            .projection(new String[]{"id", "name"})
+            .build();
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 3).mapToObj(id -> new FlightItem(id, "flight-" + id)).toList());
+    }
+
+    @Test
+    void sharesTheQueryOfIdenticalSearches() throws Exception {
+        long coalesced = jpaCriteriaSearchService.coalescedSearches();
+        int executed = executeCounter.executed.get();
+
+        List<CompletableFuture<String>> searches = searchGuard.limit(entityRegistry.entry(ENTITY), () -> {
+            List<CompletableFuture<String>> running = new ArrayList<>();
+            for (int i = 0; i < SEARCHES; i++) {
+                running.add(CompletableFuture.supplyAsync(() -> jpaCriteriaSearchService.searchAndSerialize(ENTITY, search)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jpaCriteriaSearchService.coalescedSearches() < coalesced + SEARCHES - 1) {
+                assertTrue(System.nanoTime() < deadline, "searches not coalesced in time");
+                Thread.onSpinWait();
+            }
+            return running;
+        });
+
+        String first = searches.get(0).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<String> other : searches) {
+            assertEquals(first, other.get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(first.contains("flight-3"), first);
+        assertEquals(coalesced + SEARCHES - 1, jpaCriteriaSearchService.coalescedSearches());
+        assertEquals(executed + 1, executeCounter.executed.get());
+    }
+
+    @Test
+    void runsItsOwnQueryAfterAPatch() {
+        String before = jpaCriteriaSearchService.searchAndSerialize(ENTITY, search);
+
+        jpaPatchService.patchTable("flight_item", Map.of("name", "flight-patched"), "id", 2L);
+
+        String after = jpaCriteriaSearchService.searchAndSerialize(ENTITY, search);
+        assertNotEquals(before, after);
+        assertTrue(after.contains("flight-patched"), after);
+    }
+
+    @Test
+    void neverSharesWithinACallerTransaction() {
+        long coalesced = jpaCriteriaSearchService.coalescedSearches();
+
+        String uncommitted = transactionTemplate.execute(status -> {
+            entityManager.persist(new FlightItem(99L, "flight-uncommitted"));
+            entityManager.flush();
+            String result = jpaCriteriaSearchService.searchAndSerialize(ENTITY, search);
+            status.setRollbackOnly();
+            return result;
+        });
+
+        assertTrue(uncommitted.contains("flight-uncommitted"), uncommitted);
+        assertFalse(jpaCriteriaSearchService.searchAndSerialize(ENTITY, search).contains("flight-uncommitted"));
+        assertEquals(coalesced, jpaCriteriaSearchService.coalescedSearches());
+    }
+
+    /**
+     * Counts the queries searches of the entity run.
+     */
+    static class ExecuteCounter implements CriteriaRestMetrics {
+        final AtomicInteger executed = new AtomicInteger();
+
+        @Override
+        public void phase(String entityName, String shape, String path, String phase, long nanos) {
+            if (ENTITY.equals(entityName) && "execute".equals(phase)) {
+                executed.incrementAndGet();
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class TestBeans {
+
+        @Bean
+        ExecuteCounter executeCounter() {
+            return new ExecuteCounter();
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "flight_item")
+    static class FlightItem {
+        @Id
+        private Long id;
+        private String name;
+
+        protected FlightItem() {
+        }
+
+        FlightItem(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SQL projections on H2: the projected columns selected as a tuple and written as the entity writer would write them, and the
+ * projections SQL cannot express written from entities.
+ */
+@SpringBootTest(properties = "spring.jpa.open-in-view=false")
+class SqlProjectionTest extends H2TestSupport {
+
+    private static final String ENTITY = "ProjectedItem";
+
+    @Autowired
+    private JpaCriteriaSearchService jpaCriteriaSearchService;
+    @Autowired
+    private SearchResultSerializer searchResultSerializer;
+    @Autowired
+    private PathRecorder pathRecorder;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void seed() {
+        ProjectedOwner ann = new ProjectedOwner(1L, "ann", "ann@example.com");
+        seedOnce(List.of(ann, new ProjectedItem(1L, "first", 10L, ann, List.of("red")), new ProjectedItem(2L, "second", 20L, ann, List.of()),
+                new ProjectedItem(3L, "third", null, null, List.of("blue", "green"))));
+    }
+
+    @Test
+    void writesTheProjectedColumnsFlat() {
+        JsonNode rows = search("id", "label", "owner.name");
+
+        assertEquals(read("""
+                [{"id": 1, "label": "first", "name": "ann"},
+                 {"id": 2, "label": "second", "name": "ann"},
+                 {"id": 3, "label": "third", "owner": null}]"""), rows);
+        assertEquals("projection", pathRecorder.paths.get(ENTITY));
+    }
+
+    @Test
+    void writesWhatTheEntityWriterWrites() {
+        String[][] projections = {{"id", "amount"}, {"ID", "Owner.Email", "owner.secret"}, {"label", "owner"}};
+        for (String[] projection : projections) {
+            String expected = transactionTemplate.execute(status -> {
+                List<?> entities = jpaCriteriaSearchService.search(ENTITY, ordered(projection)).results();
+                entities.forEach(entity -> Hibernate.initialize(((ProjectedItem) entity).getOwner()));
+                try {
+                    return new String(searchResultSerializer.write(searchResultSerializer.writerFor(ProjectedItem.class, projection), entities, null, ResponseFormat.JSON));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+
+            assertEquals(read(expected), search(projection), String.join(",", projection));
+        }
+    }
+
+    @Test
+    void writesCollectionsFromEntities() {
+        JsonNode rows = search("id", "tags");
+
+        assertEquals(read("""
+                [{"id": 1, "tags": ["red"]}, {"id": 2, "tags": []}, {"id": 3, "tags": ["blue", "green"]}]"""), rows);
+        assertEquals("entity", pathRecorder.paths.get(ENTITY));
+    }
+
+    private JsonNode search(String... projection) {
+        return read(jpaCriteriaSearchService.searchAndSerialize(ENTITY, ordered(projection)));
+    }
+
+    private static Dto.Search ordered(String[] projection) {
+        return Dto.Search.builder().projection(projection).orderBy(List.of(Dto.OrderBy.builder().field("id").build())).build();
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new AssertionError(json, e);
+        }
+    }
+
+    /**
+     * The path the last search of each entity took.
+     */
+    static class PathRecorder implements CriteriaRestMetrics {
+        final Map<String, String> paths = new ConcurrentHashMap<>();
+
+        @Override
+        public void phase(String entityName, String shape, String path, String phase, long nanos) {
+            paths.put(entityName, path);
+        }
+    }
+
+    @TestConfiguration
+    static class TestBeans {
+
+        @Bean
+        PathRecorder pathRecorder() {
+            return new PathRecorder();
+        }
+    }
+
+    @Entity(name = "ProjectedOwner")
+    @Table(name = "projected_owner")
+    static class ProjectedOwner {
+        @Id
+        private Long id;
+        private String name;
+        private String email;
+        @JsonIgnore
+        private String secret = "hidden";
+
+        protected ProjectedOwner() {
+        }
+
+        ProjectedOwner(Long id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+    }
+
+    @Entity(name = ENTITY)
+    @Table(name = "projected_item")
+    static class ProjectedItem {
+        @Id
+        private Long id;
+        private String label;
+        private Long amount;
+        @ManyToOne(fetch = FetchType.LAZY)
+        private ProjectedOwner owner;
+        @ElementCollection
+        @CollectionTable(name = "projected_item_tag")
+        private List<String> tags = new ArrayList<>();
+
+        protected ProjectedItem() {
+        }
+
+        ProjectedItem(Long id, String label, Long amount, ProjectedOwner owner, List<String> tags) {
+            this.id = id;
+            this.label = label;
+            this.amount = amount;
+            this.owner = owner;
+            this.tags = new ArrayList<>(tags);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Long getAmount() {
+            return amount;
+        }
+
+        public ProjectedOwner getOwner() {
+            return owner;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+}
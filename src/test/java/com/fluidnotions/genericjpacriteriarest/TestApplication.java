@@ -0,0 +1,13 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+
+/**
+ * The application of the tests on H2, found by every {@code @SpringBootTest} of the package: the auto-configuration of the library
+ * on an embedded database. Beans only one test needs are declared in a nested {@code @TestConfiguration} of that test.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+class TestApplication {
+}
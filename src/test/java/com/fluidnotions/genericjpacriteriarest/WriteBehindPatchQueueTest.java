@@ -0,0 +1,136 @@
+package com.fluidnotions.genericjpacriteriarest;
+
+import jakarta.persistence.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Write-behind patches on H2: names checked before they are queued, and a flush whose batch fails losing only the failing row.
+ */
+@SpringBootTest(properties = {"spring.jpa.open-in-view=false",
+        "rest-jpa-criteria-search.write-behind.enabled=true", "rest-jpa-criteria-search.write-behind.flush-interval=500ms",
+        "rest-jpa-criteria-search.write-behind.flush-size=3"})
+@AutoConfigureMockMvc
+class WriteBehindPatchQueueTest extends H2TestSupport {
+
+    private static final String TABLE = "queued_item";
+
+    @Autowired
+    private WriteBehindPatchQueue writeBehindPatchQueue;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void seed() {
+        seedOnce(LongStream.rangeClosed(1, 5).mapToObj(id -> new QueuedItem(id, "item-" + id, 0)).toList());
+    }
+
+    @Test
+    void refusesUnknownNamesWhenQueueing() {
+        long enqueued = writeBehindPatchQueue.enqueued();
+
+        IllegalArgumentException column = assertThrows(IllegalArgumentException.class,
+                () -> writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 1, "colour", "red"), "id", 1L));
+        assertTrue(column.getMessage().contains("colour"), column.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> writeBehindPatchQueue.enqueue("missing_table", Map.of("quantity", 1), "id", 1L));
+        assertThrows(IllegalArgumentException.class, () -> writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 1), "key", 1L));
+        assertThrows(IllegalArgumentException.class, () -> writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity; drop table x", 1), "id", 1L));
+
+        assertEquals(enqueued, writeBehindPatchQueue.enqueued());
+    }
+
+    @Test
+    void answersInvalidPatchesWithBadRequest() throws Exception {
+        mockMvc.perform(patch("/patch/queued_item/id/1").contentType(MediaType.APPLICATION_JSON).content("{\"colour\": \"red\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/patch/queued_item/id/1").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/patch/queued_item/id/5").contentType(MediaType.APPLICATION_JSON).content("{\"quantity\": 7}"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    void writesTheOtherRowsOfAFailingFlush() throws InterruptedException {
+        long failed = writeBehindPatchQueue.failedRows();
+
+        writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 11), "id", 1L);
+        writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", "eleven"), "id", 2L);
+        writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 13), "id", 3L);
+        await(() -> writeBehindPatchQueue.failedRows() > failed && quantity(1L) == 11 && quantity(3L) == 13);
+
+        assertEquals(failed + 1, writeBehindPatchQueue.failedRows());
+        assertEquals(0, quantity(2L));
+    }
+
+    @Test
+    void mergesPatchesOfTheSameRow() throws InterruptedException {
+        long coalesced = writeBehindPatchQueue.coalesced();
+
+        writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 4), "id", 4L);
+        writeBehindPatchQueue.enqueue(TABLE, Map.of("quantity", 5, "name", "renamed"), "id", 4L);
+        await(() -> quantity(4L) == 5);
+
+        assertTrue(writeBehindPatchQueue.coalesced() > coalesced);
+        assertEquals("renamed", jdbcTemplate.queryForObject("select name from queued_item where id = 4", String.class));
+    }
+
+    private static void await(BooleanSupplier written) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!written.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "rows not written in time");
+            Thread.sleep(20);
+        }
+    }
+
+    private int quantity(long id) {
+        return jdbcTemplate.queryForObject("select quantity from queued_item where id = ?", Integer.class, id);
+    }
+
+    @Entity(name = "QueuedItem")
+    @Table(name = TABLE)
+    static class QueuedItem {
+        @Id
+        private Long id;
+        private String name;
+        private int quantity;
+
+        protected QueuedItem() {
+        }
+
+        QueuedItem(Long id, String name, int quantity) {
+            this.id = id;
+            this.name = name;
+            this.quantity = quantity;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+}